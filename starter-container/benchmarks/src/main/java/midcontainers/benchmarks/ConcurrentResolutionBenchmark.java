@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package midcontainers.benchmarks;
+
+import midcontainers.Container;
+import midcontainers.components.Echo;
+import midcontainers.components.EchoClient;
+import midcontainers.components.EchoCounterClient;
+import midcontainers.local.LocalContainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures resolution from many threads sharing one container, to expose contention.
+ * <p/>
+ * Change the number of threads with <code>-t</code>, and compare with <code>ResolutionBenchmark</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class ConcurrentResolutionBenchmark {
+
+    @Param({"false", "true"})
+    public boolean frozen;
+
+    private Container container;
+
+    @Setup
+    public void setup() {
+        container = ResolutionBenchmark.assemble(new LocalContainer());
+        if (frozen) {
+            container.freeze();
+        }
+    }
+
+    @Benchmark
+    public Object singleton() {
+        return container.obtainReference(Echo.class, "shared");
+    }
+
+    @Benchmark
+    public Object new_with_definitions() {
+        return container.obtainReference(Echo.class);
+    }
+
+    @Benchmark
+    public Object new_with_component_and_definition() {
+        return container.obtainReference(EchoClient.class);
+    }
+
+    @Benchmark
+    public Object new_with_new_and_singleton_dependencies() {
+        return container.obtainReference(EchoCounterClient.class);
+    }
+}
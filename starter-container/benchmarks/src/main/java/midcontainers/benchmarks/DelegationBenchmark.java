@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package midcontainers.benchmarks;
+
+import midcontainers.Binding;
+import midcontainers.Container;
+import midcontainers.components.Echo;
+import midcontainers.components.EchoClient;
+import midcontainers.components.SomeEcho;
+import midcontainers.components.SomeEchoClient;
+import midcontainers.local.LocalContainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static midcontainers.Binding.Policy.NEW;
+import static midcontainers.Binding.Policy.SINGLETON;
+
+/**
+ * Measures lookups that go down a chain of <code>delegateTo</code> links, with the bindings and
+ * values living in the last container of the chain.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DelegationBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    public int depth;
+
+    private Container top;
+
+    @Setup
+    public void setup() {
+        Container bottom = new LocalContainer();
+        bottom
+                .declare(new Binding(Echo.class, SomeEcho.class, null, NEW))
+                .declare(new Binding(Echo.class, SomeEcho.class, "shared", SINGLETON))
+                .define("prefix", "[ ")
+                .define("suffix", " ]");
+
+        Container current = bottom;
+        for (int i = 1; i < depth; i++) {
+            current = new LocalContainer().delegateTo(current);
+        }
+        top = new LocalContainer()
+                .declare(new Binding(EchoClient.class, SomeEchoClient.class, null, NEW))
+                .define("message", "hello")
+                .delegateTo(current);
+    }
+
+    @Benchmark
+    public Object delegated_singleton() {
+        return top.obtainReference(Echo.class, "shared");
+    }
+
+    @Benchmark
+    public Object delegated_new() {
+        return top.obtainReference(Echo.class);
+    }
+
+    @Benchmark
+    public Object delegated_value() {
+        return top.definitionValue("prefix");
+    }
+
+    @Benchmark
+    public Object local_component_with_delegated_dependency() {
+        return top.obtainReference(EchoClient.class);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package midcontainers.benchmarks;
+
+import midcontainers.Binding;
+import midcontainers.Container;
+import midcontainers.components.Echo;
+import midcontainers.components.SomeEcho;
+import midcontainers.local.LocalContainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static midcontainers.Binding.Policy.NEW;
+
+/**
+ * Measures the instantiation of <code>NEW</code> bindings against a direct <code>new</code>.
+ * <p/>
+ * <code>SomeEcho</code> has a generated injector, while <code>LinkedList</code> goes through a
+ * reflective candidate: the <code>_reflective</code> variant forks with the
+ * <code>midcontainers.reflectiveInstantiation</code> property set, so that it measures
+ * <code>Constructor.newInstance</code> rather than a spun factory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstantiationBenchmark {
+
+    // Not constants, so that the JIT cannot fold the direct instantiations
+    private String prefix = "[ ";
+    private String suffix = " ]";
+
+    private Container container;
+
+    @Setup
+    public void setup() {
+        container = new LocalContainer()
+                .declare(new Binding(Echo.class, SomeEcho.class, null, NEW))
+                .declare(new Binding(List.class, LinkedList.class, null, NEW))
+                .define("prefix", prefix)
+                .define("suffix", suffix);
+    }
+
+    @Benchmark
+    public Object echo_direct() {
+        return new SomeEcho(prefix, suffix);
+    }
+
+    @Benchmark
+    public Object echo_injector() {
+        return container.obtainReference(Echo.class);
+    }
+
+    @Benchmark
+    public Object list_direct() {
+        return new LinkedList<Object>();
+    }
+
+    @Benchmark
+    public Object list_spun() {
+        return container.obtainReference(List.class);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dmidcontainers.reflectiveInstantiation=true")
+    public Object list_reflective() {
+        return container.obtainReference(List.class);
+    }
+}
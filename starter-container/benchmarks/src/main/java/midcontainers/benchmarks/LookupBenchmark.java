@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package midcontainers.benchmarks;
+
+import midcontainers.Binding;
+import midcontainers.components.Echo;
+import midcontainers.components.SomeEcho;
+import midcontainers.local.LocalContainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static midcontainers.Binding.Policy.NEW;
+import static midcontainers.Binding.Policy.SINGLETON;
+
+/**
+ * Measures qualified container lookups among several bindings of the same interface.
+ * <p/>
+ * Run with <code>-prof gc</code> to see the allocation rate of each lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+
+    private static final String[] QUALIFIERS = {null, "shared", "primary", "secondary", "fallback"};
+
+    // Not a constant, so that the JIT cannot fold the lookup key
+    private String qualifier = "secondary";
+
+    private final LocalContainer container = new LocalContainer();
+
+    @Setup
+    public void setup() {
+        for (String each : QUALIFIERS) {
+            container.declare(new Binding(Echo.class, SomeEcho.class, each, (each == null) ? NEW : SINGLETON));
+        }
+        container.define("prefix", "[ ").define("suffix", " ]");
+    }
+
+    @Benchmark
+    public boolean container_has_reference() {
+        return container.hasReferenceDeclaredFor(Echo.class, qualifier);
+    }
+
+    @Benchmark
+    public Object container_obtain_singleton() {
+        return container.obtainReference(Echo.class, qualifier);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package midcontainers.benchmarks;
+
+import midcontainers.Binding;
+import midcontainers.components.Echo;
+import midcontainers.components.SomeEcho;
+import midcontainers.remote.RemoteContainerClient;
+import midcontainers.remote.RemoteContainerServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static midcontainers.Binding.Policy.SINGLETON;
+
+/**
+ * Measures the throughput of remote calls made by many threads sharing one
+ * <code>RemoteContainerClient</code>, and so one connection, to a server on the loopback interface.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RemoteInvocationBenchmark {
+
+    private static final int PORT = 19840;
+
+    private RemoteContainerServer server;
+    private RemoteContainerClient client;
+    private Echo echo;
+
+    @Setup
+    public void setup() {
+        server = new RemoteContainerServer(PORT);
+        server
+                .declare(new Binding(Echo.class, SomeEcho.class, null, SINGLETON))
+                .define("prefix", "[ ")
+                .define("suffix", " ]");
+        server.start();
+        client = new RemoteContainerClient("127.0.0.1", PORT);
+        echo = client.obtainReference(Echo.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+        server.stop();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object threads_1() {
+        return echo.echo("hello");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object threads_4() {
+        return echo.echo("hello");
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Object threads_16() {
+        return echo.echo("hello");
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Object threads_64() {
+        return echo.echo("hello");
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package midcontainers.benchmarks;
+
+import midcontainers.Binding;
+import midcontainers.Container;
+import midcontainers.components.Counter;
+import midcontainers.components.Echo;
+import midcontainers.components.EchoClient;
+import midcontainers.components.EchoCounterClient;
+import midcontainers.components.SomeCounter;
+import midcontainers.components.SomeEcho;
+import midcontainers.components.SomeEchoClient;
+import midcontainers.components.SomeEchoCounterClient;
+import midcontainers.local.LocalContainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static midcontainers.Binding.Policy.NEW;
+import static midcontainers.Binding.Policy.SINGLETON;
+
+/**
+ * Measures <code>LocalContainer.obtainReference</code> on a single thread, from a cached
+ * <code>SINGLETON</code> to a <code>NEW</code> component with a chain of dependencies, on live
+ * and frozen containers, with and without metrics.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResolutionBenchmark {
+
+    @Param({"false", "true"})
+    public boolean frozen;
+
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    private Container container;
+
+    @Setup
+    public void setup() {
+        LocalContainer local = new LocalContainer();
+        if (metrics) {
+            local.enableMetrics();
+        }
+        container = assemble(local);
+        if (frozen) {
+            container.freeze();
+        }
+    }
+
+    /**
+     * Declares the bindings and values shared by the resolution benchmarks.
+     *
+     * @param container the container to fill
+     * @return the container
+     */
+    static Container assemble(Container container) {
+        return container
+                .declare(new Binding(Echo.class, SomeEcho.class, null, NEW))
+                .declare(new Binding(Echo.class, SomeEcho.class, "shared", SINGLETON))
+                .declare(new Binding(Counter.class, SomeCounter.class, null, NEW))
+                .declare(new Binding(Counter.class, SomeCounter.class, "shared", SINGLETON))
+                .declare(new Binding(EchoClient.class, SomeEchoClient.class, null, NEW))
+                .declare(new Binding(EchoCounterClient.class, SomeEchoCounterClient.class, null, NEW))
+                .define("prefix", "[ ")
+                .define("suffix", " ]")
+                .define("message", "hello");
+    }
+
+    @Benchmark
+    public Object singleton() {
+        return container.obtainReference(Echo.class, "shared");
+    }
+
+    @Benchmark
+    public Object new_without_dependencies() {
+        return container.obtainReference(Counter.class);
+    }
+
+    @Benchmark
+    public Object new_with_definitions() {
+        return container.obtainReference(Echo.class);
+    }
+
+    @Benchmark
+    public Object new_with_component_and_definition() {
+        return container.obtainReference(EchoClient.class);
+    }
+
+    @Benchmark
+    public Object new_with_new_and_singleton_dependencies() {
+        return container.obtainReference(EchoCounterClient.class);
+    }
+
+    @Benchmark
+    public Object definition_value() {
+        return container.definitionValue("message");
+    }
+}
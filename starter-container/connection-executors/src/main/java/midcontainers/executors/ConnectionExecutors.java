@@ -0,0 +1,70 @@
+package midcontainers.executors;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Executors running the blocking loop of each client connection of a
+ * <code>midcontainers.mq.MessageBroker</code> or of a <code>midcontainers.remote.RemoteContainerServer</code>.
+ * <p/>
+ * Any <code>Executor</code> can be given to them, as long as it gives each connection a thread of its
+ * own for as long as the client stays connected: a bounded pool would leave the clients beyond its
+ * size waiting.
+ */
+public final class ConnectionExecutors {
+
+    // Executors.newVirtualThreadPerTaskExecutor(), on JDKs that have it
+    private static final Method VIRTUAL_THREAD_PER_TASK = virtualThreadPerTask();
+
+    private ConnectionExecutors() {
+    }
+
+    /**
+     * @return an executor starting a new platform thread per connection, which is the default
+     */
+    public static Executor threadPerConnection() {
+        return new Executor() {
+            public void execute(Runnable command) {
+                new Thread(command).start();
+            }
+        };
+    }
+
+    /**
+     * @return <code>true</code> if the running JDK has virtual threads
+     */
+    public static boolean isVirtualThreadAvailable() {
+        return VIRTUAL_THREAD_PER_TASK != null;
+    }
+
+    /**
+     * Gives an executor starting a new virtual thread per connection. Blocking on a socket then only
+     * holds a small heap-allocated stack, so that a server can keep a very large number of clients.
+     *
+     * @return the executor
+     * @throws UnsupportedOperationException if the running JDK does not have virtual threads
+     */
+    public static Executor virtualThreadPerConnection() {
+        if (VIRTUAL_THREAD_PER_TASK == null) {
+            throw new UnsupportedOperationException("Virtual threads are not available on Java " + System.getProperty("java.version"));
+        }
+        try {
+            return (Executor) VIRTUAL_THREAD_PER_TASK.invoke(null);
+        } catch (IllegalAccessException e) {
+            throw new UnsupportedOperationException(e);
+        } catch (InvocationTargetException e) {
+            // Preview builds without --enable-preview
+            throw new UnsupportedOperationException(e.getCause());
+        }
+    }
+
+    private static Method virtualThreadPerTask() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
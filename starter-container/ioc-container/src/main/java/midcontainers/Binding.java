@@ -31,12 +31,21 @@ public final class Binding {
      * <li><code>SINGLETON</code>: a single instance is allocated on a per-binding key basis
      * (interface + qualifier)</li>
      * <li><code>NEW</code>: a new instance is created for every injection point.</li>
+     * <li><code>POOLED</code>: instances are handed out from a bounded pool, and given back with
+     * <code>Container.release</code> so that another caller can reuse them.</li>
+     * <li><code>THREAD</code>: a single instance is allocated per binding key and per thread, until
+     * the thread releases it with <code>Container.release</code>.</li>
      * </ul>
      */
     public static enum Policy {
-        SINGLETON, NEW
+        SINGLETON, NEW, POOLED, THREAD
     }
 
+    /**
+     * The number of idle instances kept by a <code>POOLED</code> binding when no capacity is given.
+     */
+    public static final int DEFAULT_CAPACITY = 16;
+
     /**
      * A binding key comprising an interface class and a qualifier.
      */
@@ -88,12 +97,32 @@ public final class Binding {
     private final Class<?> implementationClass;
     private final String qualifier;
     private final Policy policy;
+    private final int capacity;
+    private final Key key;
 
     public Binding(Class<?> interfaceClass, Class<?> implementationClass, String qualifier, Policy policy) {
+        this(interfaceClass, implementationClass, qualifier, policy, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a binding with a pool capacity.
+     *
+     * @param interfaceClass      the interface class
+     * @param implementationClass the implementation class
+     * @param qualifier           the qualifier, which may be <code>null</code>
+     * @param policy              the allocation policy
+     * @param capacity            the maximum number of idle instances kept for a <code>POOLED</code> policy
+     */
+    public Binding(Class<?> interfaceClass, Class<?> implementationClass, String qualifier, Policy policy, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be positive: " + capacity);
+        }
         this.interfaceClass = interfaceClass;
         this.implementationClass = implementationClass;
         this.qualifier = qualifier;
         this.policy = policy;
+        this.capacity = capacity;
+        this.key = new Key(interfaceClass, qualifier);
     }
 
     public Class<?> getInterfaceClass() {
@@ -112,8 +141,12 @@ public final class Binding {
         return policy;
     }
 
+    public int getCapacity() {
+        return capacity;
+    }
+
     public Key getKey() {
-        return new Key(interfaceClass, qualifier);
+        return key;
     }
 
     @Override
@@ -125,6 +158,7 @@ public final class Binding {
 
         if (!implementationClass.equals(binding.implementationClass)) return false;
         if (!interfaceClass.equals(binding.interfaceClass)) return false;
+        if (capacity != binding.capacity) return false;
         return policy == binding.policy && !(qualifier != null ? !qualifier.equals(binding.qualifier) : binding.qualifier != null);
 
     }
@@ -135,6 +169,7 @@ public final class Binding {
         result = 31 * result + implementationClass.hashCode();
         result = 31 * result + (qualifier != null ? qualifier.hashCode() : 0);
         result = 31 * result + policy.hashCode();
+        result = 31 * result + capacity;
         return result;
     }
 
@@ -145,6 +180,7 @@ public final class Binding {
                 ", implementationClass=" + implementationClass +
                 ", qualifier='" + qualifier + '\'' +
                 ", policy=" + policy +
+                ", capacity=" + capacity +
                 '}';
     }
 }
@@ -129,6 +129,20 @@ public interface Container {
      */
     <T> T obtainReference(Class<T> interfaceClass, String qualifier);
 
+    /**
+     * Obtain a reference to a component based on a full binding, without failing if it cannot be obtained.
+     * <p/>
+     * This is the method used while injecting constructor parameters, as missing components are
+     * expected there and must not cost the construction of an exception.
+     *
+     * @param interfaceClass the component interface class
+     * @param qualifier      the binding qualifier, which may be <code>null</code>
+     * @param <T>            the type of the component interface
+     * @return the component implementation, or <code>null</code> if there is no binding or if no
+     *         constructor could be satisfied
+     */
+    <T> T tryObtainReference(Class<T> interfaceClass, String qualifier);
+
     /**
      * Obtain a defined value.
      *
@@ -137,6 +151,27 @@ public interface Container {
      */
     Object definitionValue(String name);
 
+    /**
+     * Obtain a defined value, without failing if it is not defined.
+     *
+     * @param name the value name
+     * @return the value, or <code>null</code> if none is defined
+     */
+    Object tryDefinitionValue(String name);
+
+    /**
+     * Give back a reference once done with it.
+     * <p/>
+     * A reference from a <code>POOLED</code> binding returns to its pool, and may then be handed out
+     * again: it must not be used nor released anymore by the caller. For a <code>THREAD</code> binding,
+     * the instance of the calling thread is forgotten. Nothing happens for other policies.
+     *
+     * @param interfaceClass the component interface class
+     * @param qualifier      the binding qualifier, which may be <code>null</code>
+     * @param reference      the reference obtained from this container
+     */
+    void release(Class<?> interfaceClass, String qualifier, Object reference);
+
     // Appears with delegation support .............................................................................. //
 
     /**
@@ -171,4 +206,18 @@ public interface Container {
      * @return this container
      */
     Container delegateTo(Container container);
+
+    // Appears with frozen containers ............................................................................... //
+
+    /**
+     * Validate the component graph and compile it for fast resolution.
+     * <p/>
+     * Every binding must have a constructor that can be satisfied by the bindings, values and
+     * delegates known at this point, and bindings must not depend on each other in a cycle.
+     * Once frozen, a container no longer accepts new bindings, values or delegates.
+     *
+     * @return this container
+     * @throws ContainerException if the graph is incomplete or has a cycle
+     */
+    Container freeze();
 }
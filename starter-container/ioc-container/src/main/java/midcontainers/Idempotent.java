@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package midcontainers;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Annotation for interface methods whose results remote clients may reuse.
+ * <p/>
+ * A remote container client keeps the result of an idempotent method for the given time, and answers
+ * later calls on the same remote object with equal arguments from its cache instead of the server.
+ * It suits lookups whose results rarely change; stale entries can be dropped through the
+ * <code>ResultCache</code> of the client. Failures are not cached.
+ * <p/>
+ * Use it as in:
+ * <p/>
+ * <pre class="prettyprint">
+ * public interface Catalog {
+ *     &#64;Idempotent(ttl = 30, unit = TimeUnit.SECONDS)
+ *     String lookup(String key);
+ * }
+ * </pre>
+ * <p/>
+ * Results other than strings and primitive wrappers must be serializable: each caller gets its own
+ * copy, which it may modify. Local containers ignore the annotation.
+ *
+ * @see midcontainers.remote.ResultCache
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Idempotent {
+
+    /**
+     * @return how long a result stays in the cache
+     */
+    long ttl() default 60;
+
+    /**
+     * @return the unit of <code>ttl</code>
+     */
+    TimeUnit unit() default TimeUnit.SECONDS;
+}
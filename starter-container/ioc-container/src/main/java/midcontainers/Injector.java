@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package midcontainers;
+
+/**
+ * Compile-time generated wiring for a component implementation class.
+ * <p/>
+ * Injectors are emitted by the <code>ioc-processor</code> annotation processor for every
+ * implementation class having <code>@Named</code> or <code>@Lazy</code> constructor parameters.
+ * The injector of <code>some.pkg.SomeEchoClient</code> is named
+ * <code>some.pkg.SomeEchoClient$$Injector</code>.
+ * When present, containers use it instead of reflection to enumerate the public constructors
+ * of the class and to call them.
+ * <p/>
+ * Constructors are indexed from <code>0</code> in declaration order. Returned arrays must
+ * not be modified.
+ *
+ * @see midcontainers.Named
+ * @see midcontainers.Lazy
+ * @see midcontainers.Provider
+ */
+public interface Injector {
+
+    /**
+     * Suffix appended to the binary name of an implementation class to obtain the name of its injector.
+     */
+    String SUFFIX = "$$Injector";
+
+    /**
+     * Gives the number of public constructors.
+     *
+     * @return the number of constructors
+     */
+    int constructorCount();
+
+    /**
+     * Gives the parameter types of a constructor.
+     *
+     * @param constructor the constructor index
+     * @return the parameter types
+     */
+    Class<?>[] parameterTypes(int constructor);
+
+    /**
+     * Gives the <code>@Named</code> qualifiers of the parameters of a constructor.
+     *
+     * @param constructor the constructor index
+     * @return the qualifiers, with <code>null</code> entries for unqualified parameters
+     */
+    String[] qualifiers(int constructor);
+
+    /**
+     * Tells which parameters of a constructor are annotated with <code>@Lazy</code>.
+     *
+     * @param constructor the constructor index
+     * @return the lazy flags
+     */
+    boolean[] lazy(int constructor);
+
+    /**
+     * Gives the component types of the <code>Provider&lt;T&gt;</code> parameters of a constructor.
+     *
+     * @param constructor the constructor index
+     * @return the <code>T</code> types, with <code>null</code> entries for other parameters
+     */
+    Class<?>[] providedTypes(int constructor);
+
+    /**
+     * Calls a constructor.
+     *
+     * @param constructor the constructor index
+     * @param args        the arguments
+     * @return the new instance
+     * @throws Exception whatever the constructor throws
+     */
+    Object newInstance(int constructor, Object[] args) throws Exception;
+}
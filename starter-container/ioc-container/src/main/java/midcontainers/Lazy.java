@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package midcontainers;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marker annotation for injecting a component lazily.
+ * <p/>
+ * A lazy parameter receives a proxy of its interface rather than the component itself. The
+ * component is only obtained from the container when a method is first called on the proxy,
+ * so that rarely used collaborators are not constructed along with the component depending
+ * on them. The injection still fails upfront if the container has no binding for the component.
+ * <p/>
+ * Use it as in:
+ * <p/>
+ * <pre class="prettyprint">
+ * public SomeEchoCounterClient(Echo echo, @Lazy @Named("shared") Counter counter) {
+ *     ...
+ * }
+ * </pre>
+ * <p/>
+ * Only public interfaces can be proxied: the annotation is ignored on other parameter types.
+ *
+ * @see midcontainers.Named
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface Lazy {
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package midcontainers;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marker annotation for interface methods that remote clients do not wait for.
+ * <p/>
+ * A remote container client sends an invocation of a one-way method and returns straight away,
+ * without a round trip: the server does not reply, unless the invocation fails. Failures then
+ * reach the <code>RemoteFailureListener</code> of the client instead of the caller. This suits
+ * logging or metrics calls, whose callers have nothing to do with the outcome.
+ * <p/>
+ * Use it as in:
+ * <p/>
+ * <pre class="prettyprint">
+ * public interface Audit {
+ *     &#64;OneWay
+ *     void record(String event);
+ * }
+ * </pre>
+ * <p/>
+ * Only <code>void</code> methods can be one-way. Local containers ignore the annotation.
+ *
+ * @see midcontainers.remote.RemoteFailureListener
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface OneWay {
+}
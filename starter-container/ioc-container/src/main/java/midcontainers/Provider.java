@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package midcontainers;
+
+/**
+ * A factory of components, injected in place of the components themselves.
+ * <p/>
+ * A constructor parameter of type <code>Provider&lt;T&gt;</code>, optionally qualified with
+ * <code>@Named</code>, receives a provider bound to the <code>T</code> component of that
+ * qualifier. Each call to <code>get()</code> obtains a reference according to the binding
+ * policy, as <code>obtainReference</code> would, except that the binding or the delegate
+ * owning it has been found once and for all at injection time.
+ * <p/>
+ * Use it as in:
+ * <p/>
+ * <pre class="prettyprint">
+ * public SomeEchoClient(Provider&lt;Echo&gt; echoes, @Named("message") String message) {
+ *     ...
+ * }
+ * </pre>
+ *
+ * @param <T> the component interface type
+ * @see midcontainers.Named
+ */
+public interface Provider<T> {
+
+    /**
+     * Obtain a reference to the component.
+     *
+     * @return the component implementation
+     * @throws ContainerException if the component cannot be obtained
+     */
+    T get();
+}
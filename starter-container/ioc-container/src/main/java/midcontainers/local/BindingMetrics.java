@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package midcontainers.local;
+
+import midcontainers.Binding;
+
+/**
+ * A snapshot of the resolution counters of a binding key.
+ * <p/>
+ * Counters are cumulated since metrics were enabled on the container. A resolution is any
+ * request for the key, from an application or from the container while injecting another
+ * component. Construction times only cover the constructor call, not the resolution of its
+ * parameters, and are given in nanoseconds.
+ *
+ * @see midcontainers.local.LocalContainer#metrics()
+ */
+public final class BindingMetrics {
+
+    private final Binding.Key key;
+    private final long resolutions;
+    private final long singletonHits;
+    private final long delegateHops;
+    private final long constructionTime;
+    private final long[] constructionHistogram;
+
+    BindingMetrics(Binding.Key key, long resolutions, long singletonHits, long delegateHops, long constructionTime, long[] constructionHistogram) {
+        this.key = key;
+        this.resolutions = resolutions;
+        this.singletonHits = singletonHits;
+        this.delegateHops = delegateHops;
+        this.constructionTime = constructionTime;
+        this.constructionHistogram = constructionHistogram;
+    }
+
+    /**
+     * @return the name of the interface class of the binding key
+     */
+    public String getInterfaceName() {
+        return key.getInterfaceClass().getName();
+    }
+
+    /**
+     * @return the qualifier of the binding key, or <code>null</code>
+     */
+    public String getQualifier() {
+        return key.getQualifier();
+    }
+
+    /**
+     * @return the number of resolutions
+     */
+    public long getResolutions() {
+        return resolutions;
+    }
+
+    /**
+     * @return the number of resolutions served by an existing singleton
+     */
+    public long getSingletonHits() {
+        return singletonHits;
+    }
+
+    /**
+     * @return the share of the resolutions served by an existing singleton, between 0 and 1
+     */
+    public double getSingletonHitRatio() {
+        return (resolutions == 0L) ? 0.0 : (double) singletonHits / resolutions;
+    }
+
+    /**
+     * @return the number of resolutions forwarded to a delegate container
+     */
+    public long getDelegateHops() {
+        return delegateHops;
+    }
+
+    /**
+     * @return the number of instances constructed
+     */
+    public long getConstructions() {
+        long constructions = 0L;
+        for (long count : constructionHistogram) {
+            constructions = constructions + count;
+        }
+        return constructions;
+    }
+
+    /**
+     * @return the cumulated construction time in nanoseconds
+     */
+    public long getTotalConstructionTime() {
+        return constructionTime;
+    }
+
+    /**
+     * @return the mean construction time in nanoseconds, or 0 if nothing was constructed
+     */
+    public long getMeanConstructionTime() {
+        long constructions = getConstructions();
+        return (constructions == 0L) ? 0L : constructionTime / constructions;
+    }
+
+    /**
+     * Gives the distribution of construction times. Bucket <code>i</code> counts the constructions
+     * that took from <code>2^(i-1)</code> included to <code>2^i</code> excluded nanoseconds; the last
+     * bucket also counts the longer ones.
+     *
+     * @return the number of constructions per bucket
+     */
+    public long[] getConstructionHistogram() {
+        return constructionHistogram.clone();
+    }
+
+    /**
+     * Estimates a construction time quantile from the histogram.
+     *
+     * @param quantile the quantile, between 0 and 1
+     * @return the upper bound in nanoseconds of the bucket holding the quantile, or 0 if nothing was constructed
+     */
+    public long constructionTimeQuantile(double quantile) {
+        long constructions = getConstructions();
+        if (constructions == 0L) {
+            return 0L;
+        }
+        long rank = (long) Math.ceil(quantile * constructions);
+        long seen = 0L;
+        for (int i = 0; i < constructionHistogram.length - 1; i++) {
+            seen = seen + constructionHistogram[i];
+            if (seen >= rank) {
+                return 1L << i;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return "BindingMetrics{" +
+                "key=" + key +
+                ", resolutions=" + resolutions +
+                ", singletonHitRatio=" + getSingletonHitRatio() +
+                ", delegateHops=" + delegateHops +
+                ", constructions=" + getConstructions() +
+                ", meanConstructionTime=" + getMeanConstructionTime() +
+                ", p99ConstructionTime=" + constructionTimeQuantile(0.99) +
+                '}';
+    }
+}
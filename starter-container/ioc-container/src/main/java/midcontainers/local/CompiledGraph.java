@@ -0,0 +1,483 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package midcontainers.local;
+
+import midcontainers.Binding;
+import midcontainers.Container;
+import midcontainers.ContainerException;
+import midcontainers.Provider;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A statically validated view of the bindings of a container, with one integer slot per binding key.
+ * <p/>
+ * Compiling a graph picks, for every binding, the first constructor whose parameters can all be
+ * satisfied by a local binding, a delegate binding, a local value or a delegate value, in that
+ * order. This mirrors the dynamic discovery of <code>LocalContainer</code>, except that the
+ * constructors themselves are not run. Compilation fails if a binding has no satisfiable constructor
+ * or if local bindings depend on each other in a cycle. <code>@Lazy</code> parameters do not count
+ * as dependencies for cycle detection, since they are only resolved once the component exists, and
+ * neither do <code>Provider</code> parameters.
+ * <p/>
+ * Once compiled, resolving a slot only involves array accesses.
+ */
+final class CompiledGraph {
+
+    // Parameter sources
+    static final byte SLOT = 0;
+    static final byte VALUE = 1;
+    static final byte DELEGATE_REFERENCE = 2;
+    static final byte DELEGATE_VALUE = 3;
+    static final byte LAZY_SLOT = 4;
+    static final byte LAZY_DELEGATE_REFERENCE = 5;
+
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
+    private final Binding[] bindings;
+    private final Instantiator[] instantiators;
+    private final Class<?>[][] types;
+    private final String[][] qualifiers;
+    private final byte[][] sources;
+    private final int[][] slots;
+    private final Object[][] operands;
+    private final Map<Class<?>, SlotTable> index;
+
+    private final AtomicReferenceArray<Object> singletons;
+    private final Object[] locks;
+    private final ComponentScope[] scopes;
+    private final Map<Binding.Key, Object> publishedSingletons;
+    // Set while the container records metrics
+    private volatile ResolutionMetrics metrics;
+
+    private CompiledGraph(int size, Map<Binding.Key, Object> publishedSingletons) {
+        this.bindings = new Binding[size];
+        this.instantiators = new Instantiator[size];
+        this.types = new Class<?>[size][];
+        this.qualifiers = new String[size][];
+        this.sources = new byte[size][];
+        this.slots = new int[size][];
+        this.operands = new Object[size][];
+        this.index = new HashMap<Class<?>, SlotTable>();
+        this.singletons = new AtomicReferenceArray<Object>(size);
+        this.locks = new Object[size];
+        this.scopes = new ComponentScope[size];
+        this.publishedSingletons = publishedSingletons;
+    }
+
+    /**
+     * Compiles and validates a graph.
+     *
+     * @param bindings    the container bindings
+     * @param definitions the container values
+     * @param delegates   the container delegates
+     * @param singletons  the singletons already known to the container; their bindings need not be satisfiable
+     * @param scopes      the scopes of <code>POOLED</code> and <code>THREAD</code> bindings, shared with the container
+     * @param factories   the factory engine to obtain instantiators from
+     * @return the compiled graph
+     * @throws ContainerException if some binding cannot be satisfied, or if bindings form a cycle
+     */
+    static CompiledGraph compile(Map<Binding.Key, Binding> bindings, Map<String, Object> definitions,
+                                 List<Container> delegates, Map<Binding.Key, Object> singletons,
+                                 ConcurrentMap<Binding.Key, ComponentScope> scopes, FactoryEngine factories) {
+
+        CompiledGraph graph = new CompiledGraph(bindings.size(), singletons);
+        Map<Binding.Key, Integer> slotOfKey = new HashMap<Binding.Key, Integer>();
+        int slot = 0;
+        for (Binding binding : bindings.values()) {
+            graph.bindings[slot] = binding;
+            graph.locks[slot] = new Object();
+            graph.scopes[slot] = ComponentScope.of(scopes, binding);
+            slotOfKey.put(binding.getKey(), slot);
+            SlotTable table = graph.index.get(binding.getInterfaceClass());
+            graph.index.put(binding.getInterfaceClass(), (table == null) ? new SlotTable(binding.getQualifier(), slot) : table.with(binding.getQualifier(), slot));
+            Object singleton = singletons.get(binding.getKey());
+            if (singleton != null && binding.getPolicy() == Binding.Policy.SINGLETON) {
+                graph.singletons.set(slot, singleton);
+            }
+            slot = slot + 1;
+        }
+
+        StringBuilder problems = new StringBuilder();
+        for (slot = 0; slot < graph.bindings.length; slot++) {
+            if (graph.singletons.get(slot) != null) {
+                graph.sources[slot] = new byte[0];
+                graph.slots[slot] = new int[0];
+                continue;
+            }
+            if (!graph.plan(slot, slotOfKey, definitions, delegates, factories)) {
+                problems.append("\n  no satisfiable public constructor for ").append(graph.bindings[slot]);
+            }
+        }
+        if (problems.length() > 0) {
+            throw new ContainerException("Unresolvable bindings:" + problems);
+        }
+        graph.checkCycles();
+        return graph;
+    }
+
+    private boolean plan(int slot, Map<Binding.Key, Integer> slotOfKey, Map<String, Object> definitions,
+                         List<Container> delegates, FactoryEngine factories) {
+
+        for (ConstructorCandidate candidate : factories.candidatesFor(bindings[slot].getImplementationClass())) {
+            if (satisfy(slot, candidate, slotOfKey, definitions, delegates)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean satisfy(int slot, ConstructorCandidate candidate, Map<Binding.Key, Integer> slotOfKey,
+                            Map<String, Object> definitions, List<Container> delegates) {
+        int count = candidate.getParameterCount();
+        Class<?>[] parameterTypes = new Class<?>[count];
+        String[] parameterQualifiers = new String[count];
+        byte[] parameterSources = new byte[count];
+        int[] parameterSlots = new int[count];
+        Object[] parameterOperands = new Object[count];
+
+        boolean satisfied = true;
+        for (int i = 0; i < parameterTypes.length && satisfied; i++) {
+            String qualifier = candidate.getQualifier(i);
+            parameterTypes[i] = candidate.getParameterType(i);
+            parameterQualifiers[i] = qualifier;
+            Class<?> providedType = candidate.getProvidedType(i);
+            if (providedType != null) {
+                // Providers are plain values bound to their slot or delegate, and defer resolution
+                Integer provided = slotOfKey.get(new Binding.Key(providedType, qualifier));
+                Container providedOwner = (provided == null) ? referenceOwner(delegates, providedType, qualifier) : null;
+                if (provided != null || providedOwner != null) {
+                    parameterSources[i] = VALUE;
+                    parameterOperands[i] = (provided != null) ? new SlotProvider(provided) : new DelegateProvider(providedOwner, providedType, qualifier);
+                    continue;
+                }
+            }
+            Integer dependency = slotOfKey.get(new Binding.Key(parameterTypes[i], qualifier));
+            if (dependency != null) {
+                parameterSources[i] = candidate.isLazy(i) ? LAZY_SLOT : SLOT;
+                parameterSlots[i] = dependency;
+                continue;
+            }
+            Container owner = referenceOwner(delegates, parameterTypes[i], qualifier);
+            if (owner != null) {
+                parameterSources[i] = candidate.isLazy(i) ? LAZY_DELEGATE_REFERENCE : DELEGATE_REFERENCE;
+                parameterOperands[i] = owner;
+                continue;
+            }
+            Object value = (qualifier != null) ? definitions.get(qualifier) : null;
+            if (value != null) {
+                parameterSources[i] = VALUE;
+                parameterOperands[i] = value;
+                continue;
+            }
+            owner = (qualifier != null) ? valueOwner(delegates, qualifier) : null;
+            if (owner != null) {
+                parameterSources[i] = DELEGATE_VALUE;
+                parameterOperands[i] = owner;
+                continue;
+            }
+            satisfied = false;
+        }
+
+        if (!satisfied) {
+            return false;
+        }
+        instantiators[slot] = candidate.getInstantiator();
+        types[slot] = parameterTypes;
+        qualifiers[slot] = parameterQualifiers;
+        sources[slot] = parameterSources;
+        slots[slot] = parameterSlots;
+        operands[slot] = parameterOperands;
+        return true;
+    }
+
+    private static Container referenceOwner(List<Container> delegates, Class<?> type, String qualifier) {
+        for (Container delegate : delegates) {
+            if (delegate.hasReferenceDeclaredFor(type, qualifier)) {
+                return delegate;
+            }
+        }
+        return null;
+    }
+
+    private static Container valueOwner(List<Container> delegates, String name) {
+        for (Container delegate : delegates) {
+            if (delegate.tryDefinitionValue(name) != null) {
+                return delegate;
+            }
+        }
+        return null;
+    }
+
+    // Depth-first search over local edges, reporting the first cycle found
+    private void checkCycles() {
+        byte[] state = new byte[bindings.length];
+        int[] path = new int[bindings.length];
+        for (int root = 0; root < bindings.length; root++) {
+            if (state[root] == 0) {
+                visit(root, state, path, 0);
+            }
+        }
+    }
+
+    private void visit(int slot, byte[] state, int[] path, int depth) {
+        state[slot] = 1;
+        path[depth] = slot;
+        for (int i = 0; i < sources[slot].length; i++) {
+            if (sources[slot][i] != SLOT) {
+                continue;
+            }
+            int dependency = slots[slot][i];
+            if (state[dependency] == 1) {
+                StringBuilder cycle = new StringBuilder("Dependency cycle:");
+                int start = depth;
+                while (path[start] != dependency) {
+                    start = start - 1;
+                }
+                for (int j = start; j <= depth; j++) {
+                    cycle.append("\n  ").append(bindings[path[j]].getKey()).append(" ->");
+                }
+                cycle.append("\n  ").append(bindings[dependency].getKey());
+                throw new ContainerException(cycle.toString());
+            }
+            if (state[dependency] == 0) {
+                visit(dependency, state, path, depth + 1);
+            }
+        }
+        state[slot] = 2;
+    }
+
+    // Dependency analysis .......................................................................................... //
+
+    int size() {
+        return bindings.length;
+    }
+
+    Binding bindingAt(int slot) {
+        return bindings[slot];
+    }
+
+    boolean isInstantiated(int slot) {
+        return singletons.get(slot) != null;
+    }
+
+    /**
+     * Gives the <code>SINGLETON</code> slots that a slot needs to be created, looking through
+     * the <code>NEW</code> slots in between. Lazy parameters and delegates are not followed.
+     *
+     * @param slot the slot
+     * @return the singleton slots, without duplicates
+     */
+    int[] singletonDependencies(int slot) {
+        boolean[] visited = new boolean[bindings.length];
+        int[] found = new int[bindings.length];
+        int count = collectSingletonDependencies(slot, visited, found, 0);
+        int[] result = new int[count];
+        System.arraycopy(found, 0, result, 0, count);
+        return result;
+    }
+
+    private int collectSingletonDependencies(int slot, boolean[] visited, int[] found, int count) {
+        for (int i = 0; i < sources[slot].length; i++) {
+            int dependency = slots[slot][i];
+            if (sources[slot][i] != SLOT || visited[dependency]) {
+                continue;
+            }
+            visited[dependency] = true;
+            if (bindings[dependency].getPolicy() == Binding.Policy.SINGLETON) {
+                found[count] = dependency;
+                count = count + 1;
+            } else {
+                count = collectSingletonDependencies(dependency, visited, found, count);
+            }
+        }
+        return count;
+    }
+
+    // Resolution ................................................................................................... //
+
+    /**
+     * Finds the slot of a binding key.
+     *
+     * @param interfaceClass the interface class
+     * @param qualifier      the qualifier, which may be <code>null</code>
+     * @return the slot, or <code>-1</code> if the key is not bound in this graph
+     */
+    int slotOf(Class<?> interfaceClass, String qualifier) {
+        SlotTable table = index.get(interfaceClass);
+        return (table == null) ? -1 : table.slotOf(qualifier);
+    }
+
+    void setMetrics(ResolutionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    Object obtain(int slot) {
+        ResolutionMetrics.Counters counters = null;
+        ResolutionMetrics recording = metrics;
+        if (recording != null) {
+            counters = recording.of(bindings[slot].getInterfaceClass(), bindings[slot].getQualifier());
+            counters.resolved();
+        }
+        ComponentScope scope = scopes[slot];
+        if (scope != null) {
+            Object reference = scope.acquire();
+            if (reference == null) {
+                reference = create(slot);
+                scope.created(reference);
+            }
+            return reference;
+        }
+        if (bindings[slot].getPolicy() != Binding.Policy.SINGLETON) {
+            return create(slot);
+        }
+        Object reference = singletons.get(slot);
+        if (reference == null) {
+            synchronized (locks[slot]) {
+                reference = singletons.get(slot);
+                if (reference == null) {
+                    reference = create(slot);
+                    singletons.set(slot, reference);
+                    publishedSingletons.put(bindings[slot].getKey(), reference);
+                    return reference;
+                }
+            }
+        }
+        if (counters != null) {
+            counters.singletonHit();
+        }
+        return reference;
+    }
+
+    private Object create(int slot) {
+        byte[] parameterSources = sources[slot];
+        Object[] args = (parameterSources.length == 0) ? NO_ARGUMENTS : new Object[parameterSources.length];
+        for (int i = 0; i < parameterSources.length; i++) {
+            switch (parameterSources[i]) {
+                case SLOT:
+                    args[i] = obtain(slots[slot][i]);
+                    break;
+                case VALUE:
+                    args[i] = operands[slot][i];
+                    break;
+                case DELEGATE_REFERENCE:
+                    args[i] = ((Container) operands[slot][i]).obtainReference(types[slot][i], qualifiers[slot][i]);
+                    break;
+                case DELEGATE_VALUE:
+                    args[i] = ((Container) operands[slot][i]).definitionValue(qualifiers[slot][i]);
+                    break;
+                case LAZY_SLOT:
+                    args[i] = lazySlot(types[slot][i], slots[slot][i]);
+                    break;
+                case LAZY_DELEGATE_REFERENCE:
+                    args[i] = LazyReference.proxy((Container) operands[slot][i], types[slot][i], qualifiers[slot][i]);
+                    break;
+            }
+        }
+        try {
+            ResolutionMetrics recording = metrics;
+            if (recording == null) {
+                return instantiators[slot].newInstance(args);
+            }
+            long start = System.nanoTime();
+            Object reference = instantiators[slot].newInstance(args);
+            recording.of(bindings[slot].getInterfaceClass(), bindings[slot].getQualifier()).constructed(System.nanoTime() - start);
+            return reference;
+        } catch (Exception e) {
+            throw new ContainerException("Failed to obtain reference for " + bindings[slot].getKey(), e);
+        }
+    }
+
+    private Object lazySlot(Class<?> type, final int dependency) {
+        return LazyReference.proxy(type, new LazyReference() {
+            @Override
+            protected Object resolve() {
+                return obtain(dependency);
+            }
+        });
+    }
+
+    private final class SlotProvider implements Provider<Object> {
+        private final int slot;
+
+        SlotProvider(int slot) {
+            this.slot = slot;
+        }
+
+        public Object get() {
+            return obtain(slot);
+        }
+    }
+
+    private static final class DelegateProvider implements Provider<Object> {
+        private final Container owner;
+        private final Class<?> interfaceClass;
+        private final String qualifier;
+
+        DelegateProvider(Container owner, Class<?> interfaceClass, String qualifier) {
+            this.owner = owner;
+            this.interfaceClass = interfaceClass;
+            this.qualifier = qualifier;
+        }
+
+        public Object get() {
+            return owner.obtainReference(interfaceClass, qualifier);
+        }
+    }
+
+    /**
+     * Qualifier to slot associations for a single interface class.
+     */
+    private static final class SlotTable {
+        private final String[] qualifiers;
+        private final int[] slots;
+
+        SlotTable(String qualifier, int slot) {
+            this(new String[]{qualifier}, new int[]{slot});
+        }
+
+        private SlotTable(String[] qualifiers, int[] slots) {
+            this.qualifiers = qualifiers;
+            this.slots = slots;
+        }
+
+        SlotTable with(String qualifier, int slot) {
+            String[] moreQualifiers = new String[qualifiers.length + 1];
+            int[] moreSlots = new int[slots.length + 1];
+            System.arraycopy(qualifiers, 0, moreQualifiers, 0, qualifiers.length);
+            System.arraycopy(slots, 0, moreSlots, 0, slots.length);
+            moreQualifiers[qualifiers.length] = qualifier;
+            moreSlots[slots.length] = slot;
+            return new SlotTable(moreQualifiers, moreSlots);
+        }
+
+        int slotOf(String qualifier) {
+            for (int i = 0; i < qualifiers.length; i++) {
+                String candidate = qualifiers[i];
+                if (candidate == qualifier || (qualifier != null && qualifier.equals(candidate))) {
+                    return slots[i];
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package midcontainers.local;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The bounded pool of a <code>POOLED</code> binding.
+ * <p/>
+ * Idle instances sit in a fixed array of slots. Each thread starts scanning the slots at an
+ * offset derived from its identifier, so that threads mostly work on different slots and tend
+ * to get back the instance they released last. Slots are taken and filled with atomic swaps:
+ * the pool never locks.
+ * <p/>
+ * The pool bounds the number of idle instances, not the number of instances in use: when no
+ * instance is idle a new one is created, and an instance released to a full pool is dropped.
+ */
+final class ComponentPool extends ComponentScope {
+
+    private final AtomicReferenceArray<Object> idle;
+    private final LongAdder created = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+
+    ComponentPool(int capacity) {
+        this.idle = new AtomicReferenceArray<Object>(capacity);
+    }
+
+    @Override
+    Object acquire() {
+        int capacity = idle.length();
+        int start = stripe(capacity);
+        for (int i = 0; i < capacity; i++) {
+            int slot = (start + i < capacity) ? start + i : start + i - capacity;
+            if (idle.get(slot) != null) {
+                Object reference = idle.getAndSet(slot, null);
+                if (reference != null) {
+                    reused.increment();
+                    return reference;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    void created(Object reference) {
+        created.increment();
+    }
+
+    @Override
+    void release(Object reference) {
+        int capacity = idle.length();
+        int start = stripe(capacity);
+        for (int i = 0; i < capacity; i++) {
+            int slot = (start + i < capacity) ? start + i : start + i - capacity;
+            if (idle.get(slot) == null && idle.compareAndSet(slot, null, reference)) {
+                released.increment();
+                return;
+            }
+        }
+        discarded.increment();
+    }
+
+    private static int stripe(int capacity) {
+        return (int) (Thread.currentThread().getId() % capacity);
+    }
+
+    PoolStatistics statistics() {
+        int idleCount = 0;
+        for (int i = 0; i < idle.length(); i++) {
+            if (idle.get(i) != null) {
+                idleCount = idleCount + 1;
+            }
+        }
+        return new PoolStatistics(idle.length(), idleCount, created.sum(), reused.sum(), released.sum(), discarded.sum());
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package midcontainers.local;
+
+import midcontainers.Binding;
+
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Where the instances of a <code>POOLED</code> or <code>THREAD</code> binding are kept between requests.
+ */
+abstract class ComponentScope {
+
+    /**
+     * Finds the scope of a binding, creating it on first use.
+     *
+     * @param scopes  the scopes of a container, by binding key
+     * @param binding the binding
+     * @return the scope, or <code>null</code> if the binding policy does not keep instances in a scope
+     */
+    static ComponentScope of(ConcurrentMap<Binding.Key, ComponentScope> scopes, Binding binding) {
+        Binding.Policy policy = binding.getPolicy();
+        if (policy != Binding.Policy.POOLED && policy != Binding.Policy.THREAD) {
+            return null;
+        }
+        ComponentScope scope = scopes.get(binding.getKey());
+        if (scope == null) {
+            scope = (policy == Binding.Policy.POOLED) ? new ComponentPool(binding.getCapacity()) : new ThreadScope();
+            ComponentScope existing = scopes.putIfAbsent(binding.getKey(), scope);
+            if (existing != null) {
+                scope = existing;
+            }
+        }
+        return scope;
+    }
+
+    /**
+     * Takes an instance from the scope.
+     *
+     * @return an instance, or <code>null</code> if the scope has none for the caller
+     */
+    abstract Object acquire();
+
+    /**
+     * Records an instance that was just created because the scope had none for the caller.
+     *
+     * @param reference the new instance, now in use by the caller
+     */
+    abstract void created(Object reference);
+
+    /**
+     * Gives an instance back to the scope.
+     *
+     * @param reference the instance
+     */
+    abstract void release(Object reference);
+}
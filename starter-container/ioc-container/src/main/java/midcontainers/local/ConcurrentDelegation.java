@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package midcontainers.local;
+
+import midcontainers.Container;
+import midcontainers.ContainerException;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Asks the same question to several delegates at once, and keeps the answer of the first
+ * delegate in declaration order that answers positively.
+ * <p/>
+ * All delegates are queried together and given the same deadline, so that a lookup takes as long
+ * as the slowest delegate it has to wait for rather than the sum of their latencies. A delegate that
+ * fails or misses the deadline counts as not knowing the answer, for this question only.
+ */
+final class ConcurrentDelegation {
+
+    /**
+     * The outcome of a question: the first positive answer and the delegate that gave it, if any.
+     * An outcome is definitive when every delegate before the one that answered, or every delegate
+     * if none did, replied in time.
+     */
+    static final class Answer {
+        final Container delegate;
+        final Object value;
+        final boolean definitive;
+
+        Answer(Container delegate, Object value, boolean definitive) {
+            this.delegate = delegate;
+            this.value = value;
+            this.definitive = definitive;
+        }
+    }
+
+    // Late or failed delegates
+    private static final Object NO_REPLY = new Object();
+
+    private final Executor executor;
+    private final long timeout;
+
+    ConcurrentDelegation(Executor executor, long timeout) {
+        this.executor = executor;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Asks a question to delegates.
+     *
+     * @param delegates the delegates, by decreasing priority
+     * @param question  the question, answered by <code>null</code> or <code>Boolean.FALSE</code> when the delegate does not know
+     * @return the outcome, with a <code>null</code> delegate if no delegate answered positively
+     * @throws ContainerException if interrupted while waiting for answers
+     */
+    Answer ask(List<Container> delegates, final Function<Container, Object> question) {
+        long deadline = System.nanoTime() + timeout;
+        Container[] asked = delegates.toArray(new Container[0]);
+        CompletableFuture<?>[] answers = new CompletableFuture<?>[asked.length];
+        for (int i = 0; i < asked.length; i++) {
+            final Container delegate = asked[i];
+            answers[i] = CompletableFuture.supplyAsync(new Supplier<Object>() {
+                public Object get() {
+                    return question.apply(delegate);
+                }
+            }, executor);
+        }
+
+        try {
+            boolean definitive = true;
+            for (int i = 0; i < asked.length; i++) {
+                Object value = answerOf(answers[i], deadline);
+                if (value == NO_REPLY) {
+                    definitive = false;
+                } else if (value != null && value != Boolean.FALSE) {
+                    return new Answer(asked[i], value, definitive);
+                }
+            }
+            return new Answer(null, null, definitive);
+        } finally {
+            // Do not start queries nobody waits for anymore
+            for (CompletableFuture<?> answer : answers) {
+                answer.cancel(false);
+            }
+        }
+    }
+
+    private static Object answerOf(CompletableFuture<?> answer, long deadline) {
+        try {
+            return answer.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ContainerException("Interrupted while querying delegates", e);
+        } catch (ExecutionException failed) {
+            return NO_REPLY;
+        } catch (TimeoutException late) {
+            return NO_REPLY;
+        }
+    }
+}
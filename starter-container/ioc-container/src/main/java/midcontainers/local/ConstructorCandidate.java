@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package midcontainers.local;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * A public constructor of an implementation class, described by its parameter types,
+ * <code>@Named</code> qualifiers, <code>@Lazy</code> flags and <code>Provider</code> component types.
+ * <p/>
+ * Candidates either come from a generated <code>Injector</code> or from reflection, in which
+ * case the instantiator is only created when the constructor is first chosen.
+ *
+ * @see midcontainers.local.FactoryEngine
+ */
+final class ConstructorCandidate {
+
+    private final Class<?>[] parameterTypes;
+    private final String[] qualifiers;
+    private final boolean[] lazy;
+    private final Class<?>[] providedTypes;
+    private final Constructor<?> constructor;
+    private volatile Instantiator instantiator;
+
+    ConstructorCandidate(Class<?>[] parameterTypes, String[] qualifiers, boolean[] lazy, Class<?>[] providedTypes,
+                         Instantiator instantiator) {
+        this.parameterTypes = parameterTypes;
+        this.qualifiers = qualifiers;
+        this.lazy = lazy;
+        this.providedTypes = providedTypes;
+        this.constructor = null;
+        this.instantiator = instantiator;
+    }
+
+    ConstructorCandidate(Constructor<?> constructor, String[] qualifiers, boolean[] lazy, Class<?>[] providedTypes) {
+        this.parameterTypes = constructor.getParameterTypes();
+        this.qualifiers = qualifiers;
+        this.lazy = lazy;
+        this.providedTypes = providedTypes;
+        this.constructor = constructor;
+    }
+
+    int getParameterCount() {
+        return parameterTypes.length;
+    }
+
+    Class<?> getParameterType(int index) {
+        return parameterTypes[index];
+    }
+
+    String getQualifier(int index) {
+        return qualifiers[index];
+    }
+
+    /**
+     * Tells whether a parameter is to be injected as a lazy proxy.
+     *
+     * @param index the parameter index
+     * @return <code>true</code> if the parameter is annotated with <code>@Lazy</code> and its type can be proxied
+     */
+    boolean isLazy(int index) {
+        return lazy[index] && LazyReference.canProxy(parameterTypes[index]);
+    }
+
+    /**
+     * Gives the component type of a <code>Provider&lt;T&gt;</code> parameter.
+     *
+     * @param index the parameter index
+     * @return the <code>T</code> type, or <code>null</code> if the parameter is not a provider
+     */
+    Class<?> getProvidedType(int index) {
+        return providedTypes[index];
+    }
+
+    Instantiator getInstantiator() {
+        Instantiator result = instantiator;
+        if (result == null) {
+            result = FactoryEngine.create(constructor);
+            instantiator = result;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package midcontainers.local;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Exposes the resolution metrics of a container through JMX.
+ */
+final class ContainerMetrics implements ContainerMetricsMXBean {
+
+    private final LocalContainer container;
+
+    ContainerMetrics(LocalContainer container) {
+        this.container = container;
+    }
+
+    public boolean isEnabled() {
+        return container.isMetricsEnabled();
+    }
+
+    public void setEnabled(boolean enabled) {
+        if (enabled) {
+            container.enableMetrics();
+        } else {
+            container.disableMetrics();
+        }
+    }
+
+    public void reset() {
+        container.resetMetrics();
+    }
+
+    public List<BindingMetrics> getBindings() {
+        return new ArrayList<BindingMetrics>(container.metrics().values());
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package midcontainers.local;
+
+import java.util.List;
+
+/**
+ * The JMX management interface of the resolution metrics of a <code>LocalContainer</code>.
+ * <p/>
+ * Binding metrics are exposed as composite data, one per binding key that was resolved.
+ *
+ * @see midcontainers.local.LocalContainer#registerMetricsMBean(String)
+ */
+public interface ContainerMetricsMXBean {
+
+    /**
+     * @return <code>true</code> if the container records metrics
+     */
+    boolean isEnabled();
+
+    /**
+     * Starts or stops recording. Stopping discards the counters.
+     *
+     * @param enabled whether to record metrics
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Sets all counters back to zero.
+     */
+    void reset();
+
+    /**
+     * @return a snapshot of the counters of every resolved binding key
+     */
+    List<BindingMetrics> getBindings();
+}
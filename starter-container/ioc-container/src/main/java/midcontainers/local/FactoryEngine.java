@@ -0,0 +1,371 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package midcontainers.local;
+
+import midcontainers.ContainerException;
+import midcontainers.Injector;
+import midcontainers.Lazy;
+import midcontainers.Named;
+import midcontainers.Provider;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Describes the constructors of implementation classes and produces their instantiators.
+ * <p/>
+ * Constructor candidates are taken from the generated <code>Injector</code> of a class when
+ * there is one, and from reflection otherwise. They are computed once per class and shared by every
+ * container, so that instantiators are only spun once; a <code>ClassValue</code> keeps them without
+ * holding on to the classes. Candidates are ordered the
+ * same way in both cases: constructors taking more parameters come first, and constructors with as
+ * many parameters are ordered by the names of their parameter types.
+ * <p/>
+ * For reflective candidates, the engine picks the fastest strategy that works for a given constructor:
+ * <ul>
+ * <li>a <code>LambdaMetafactory</code>-spun factory class for constructors with up to
+ * <code>MAX_LAMBDA_ARITY</code> parameters, which calls the constructor directly,</li>
+ * <li>a spreading <code>MethodHandle</code> for constructors with more parameters,</li>
+ * <li>plain <code>Constructor.newInstance</code> when neither can be linked, for instance because
+ * the implementation class is not public.</li>
+ * </ul>
+ * Setting the <code>midcontainers.reflectiveInstantiation</code> system property to <code>true</code>
+ * restricts reflective candidates to <code>Constructor.newInstance</code>, for instance to compare the
+ * strategies or to rule the spun classes out when diagnosing a problem.
+ */
+final class FactoryEngine {
+
+    static final int MAX_LAMBDA_ARITY = 5;
+
+    static final boolean REFLECTIVE_INSTANTIATION = Boolean.getBoolean("midcontainers.reflectiveInstantiation");
+
+    private static final Class<?>[] SHAPES = {
+            Shape0.class, Shape1.class, Shape2.class, Shape3.class, Shape4.class, Shape5.class
+    };
+
+    private static final ConstructorCandidate[] NO_CANDIDATES = new ConstructorCandidate[0];
+
+    // Neither declaration order nor getConstructors() order are reliable
+    private static final Comparator<ConstructorCandidate> CANDIDATE_ORDER = new Comparator<ConstructorCandidate>() {
+        public int compare(ConstructorCandidate a, ConstructorCandidate b) {
+            if (a.getParameterCount() != b.getParameterCount()) {
+                return (a.getParameterCount() > b.getParameterCount()) ? -1 : 1;
+            }
+            for (int i = 0; i < a.getParameterCount(); i++) {
+                int order = a.getParameterType(i).getName().compareTo(b.getParameterType(i).getName());
+                if (order != 0) {
+                    return order;
+                }
+            }
+            return 0;
+        }
+    };
+
+    private static final ClassValue<ConstructorCandidate[]> CANDIDATES = new ClassValue<ConstructorCandidate[]>() {
+        protected ConstructorCandidate[] computeValue(Class<?> implementationClass) {
+            return discover(implementationClass);
+        }
+    };
+
+    // Classes without an injector map to this, since a ClassValue cannot hold null
+    private static final Object NO_INJECTOR = new Object();
+
+    private static final ClassValue<Object> INJECTORS = new ClassValue<Object>() {
+        protected Object computeValue(Class<?> implementationClass) {
+            Injector injector = loadInjector(implementationClass);
+            return (injector == null) ? NO_INJECTOR : injector;
+        }
+    };
+
+    ConstructorCandidate[] candidatesFor(Class<?> implementationClass) {
+        return CANDIDATES.get(implementationClass);
+    }
+
+    private static ConstructorCandidate[] discover(Class<?> implementationClass) {
+        Injector injector = generatedInjectorFor(implementationClass);
+        if (injector != null) {
+            ConstructorCandidate[] result = new ConstructorCandidate[injector.constructorCount()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = new ConstructorCandidate(injector.parameterTypes(i), injector.qualifiers(i), injector.lazy(i),
+                        injector.providedTypes(i), new InjectorInstantiator(injector, i));
+            }
+            Arrays.sort(result, CANDIDATE_ORDER);
+            return result;
+        }
+        Constructor<?>[] constructors = implementationClass.getConstructors();
+        if (constructors.length == 0) {
+            return NO_CANDIDATES;
+        }
+        ConstructorCandidate[] result = new ConstructorCandidate[constructors.length];
+        for (int i = 0; i < constructors.length; i++) {
+            Annotation[][] annotations = constructors[i].getParameterAnnotations();
+            String[] qualifiers = new String[annotations.length];
+            boolean[] lazy = new boolean[annotations.length];
+            Class<?>[] providedTypes = new Class<?>[annotations.length];
+            Type[] genericTypes = constructors[i].getGenericParameterTypes();
+            for (int j = 0; j < annotations.length; j++) {
+                qualifiers[j] = qualifierNameFor(annotations[j]);
+                lazy[j] = isLazy(annotations[j]);
+                // Generic types may omit synthetic parameters, leaving them unknown
+                providedTypes[j] = (genericTypes.length == annotations.length) ? providedTypeOf(genericTypes[j]) : null;
+            }
+            result[i] = new ConstructorCandidate(constructors[i], qualifiers, lazy, providedTypes);
+        }
+        Arrays.sort(result, CANDIDATE_ORDER);
+        return result;
+    }
+
+    static Injector generatedInjectorFor(Class<?> implementationClass) {
+        Object injector = INJECTORS.get(implementationClass);
+        return (injector == NO_INJECTOR) ? null : (Injector) injector;
+    }
+
+    private static Injector loadInjector(Class<?> implementationClass) {
+        try {
+            Class<?> injectorClass = Class.forName(implementationClass.getName() + Injector.SUFFIX, true, implementationClass.getClassLoader());
+            return (Injector) injectorClass.getConstructor().newInstance();
+        } catch (ClassNotFoundException ignored) {
+            return null;
+        } catch (Exception e) {
+            throw new ContainerException("Could not instantiate the generated injector of " + implementationClass, e);
+        }
+    }
+
+    private static String qualifierNameFor(Annotation[] parameterAnnotations) {
+        for (Annotation annotation : parameterAnnotations) {
+            if (annotation instanceof Named) {
+                return ((Named) annotation).value();
+            }
+        }
+        return null;
+    }
+
+    private static boolean isLazy(Annotation[] parameterAnnotations) {
+        for (Annotation annotation : parameterAnnotations) {
+            if (annotation instanceof Lazy) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // The T of a Provider<T> parameter, when it names a class or interface
+    private static Class<?> providedTypeOf(Type genericType) {
+        if (!(genericType instanceof ParameterizedType) || ((ParameterizedType) genericType).getRawType() != Provider.class) {
+            return null;
+        }
+        Type argument = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+        if (argument instanceof ParameterizedType) {
+            argument = ((ParameterizedType) argument).getRawType();
+        }
+        return (argument instanceof Class) ? (Class<?>) argument : null;
+    }
+
+    static Instantiator create(Constructor<?> constructor) {
+        if (REFLECTIVE_INSTANTIATION || !Modifier.isPublic(constructor.getDeclaringClass().getModifiers())) {
+            return new ReflectiveInstantiator(constructor);
+        }
+        try {
+            if (constructor.getParameterTypes().length <= MAX_LAMBDA_ARITY && isLinkable(constructor)) {
+                return spin(constructor);
+            }
+            return new MethodHandleInstantiator(constructor);
+        } catch (Throwable ignored) {
+            return new ReflectiveInstantiator(constructor);
+        }
+    }
+
+    private static Instantiator spin(Constructor<?> constructor) throws Throwable {
+        Class<?>[] parameterTypes = constructor.getParameterTypes();
+        Class<?> shape = SHAPES[parameterTypes.length];
+        Class<?>[] boxedTypes = new Class<?>[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            boxedTypes[i] = MethodType.methodType(parameterTypes[i]).wrap().returnType();
+        }
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle handle = lookup.unreflectConstructor(constructor);
+        CallSite site = LambdaMetafactory.metafactory(
+                lookup,
+                "create",
+                MethodType.methodType(shape),
+                MethodType.genericMethodType(parameterTypes.length),
+                handle,
+                MethodType.methodType(constructor.getDeclaringClass(), boxedTypes));
+        return (Instantiator) site.getTarget().invoke();
+    }
+
+    // The spun class lives in our class loader and must be able to link against every type it casts to
+    private static boolean isLinkable(Constructor<?> constructor) {
+        if (!isVisible(constructor.getDeclaringClass())) {
+            return false;
+        }
+        for (Class<?> type : constructor.getParameterTypes()) {
+            if (!type.isPrimitive() && !isVisible(type)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isVisible(Class<?> type) {
+        try {
+            return Class.forName(type.getName(), false, FactoryEngine.class.getClassLoader()) == type;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    // Generated injectors ......................................................................................... //
+
+    static final class InjectorInstantiator implements Instantiator {
+        private final Injector injector;
+        private final int constructor;
+
+        InjectorInstantiator(Injector injector, int constructor) {
+            this.injector = injector;
+            this.constructor = constructor;
+        }
+
+        public Object newInstance(Object[] args) throws Exception {
+            try {
+                return injector.newInstance(constructor, args);
+            } catch (Throwable t) {
+                throw new InvocationTargetException(t);
+            }
+        }
+    }
+
+    // Functional shapes implemented by the spun factory classes ................................................... //
+
+    interface Shape0 extends Instantiator {
+        Object create();
+
+        default Object newInstance(Object[] args) throws Exception {
+            try {
+                return create();
+            } catch (Throwable t) {
+                throw new InvocationTargetException(t);
+            }
+        }
+    }
+
+    interface Shape1 extends Instantiator {
+        Object create(Object a);
+
+        default Object newInstance(Object[] args) throws Exception {
+            try {
+                return create(args[0]);
+            } catch (Throwable t) {
+                throw new InvocationTargetException(t);
+            }
+        }
+    }
+
+    interface Shape2 extends Instantiator {
+        Object create(Object a, Object b);
+
+        default Object newInstance(Object[] args) throws Exception {
+            try {
+                return create(args[0], args[1]);
+            } catch (Throwable t) {
+                throw new InvocationTargetException(t);
+            }
+        }
+    }
+
+    interface Shape3 extends Instantiator {
+        Object create(Object a, Object b, Object c);
+
+        default Object newInstance(Object[] args) throws Exception {
+            try {
+                return create(args[0], args[1], args[2]);
+            } catch (Throwable t) {
+                throw new InvocationTargetException(t);
+            }
+        }
+    }
+
+    interface Shape4 extends Instantiator {
+        Object create(Object a, Object b, Object c, Object d);
+
+        default Object newInstance(Object[] args) throws Exception {
+            try {
+                return create(args[0], args[1], args[2], args[3]);
+            } catch (Throwable t) {
+                throw new InvocationTargetException(t);
+            }
+        }
+    }
+
+    interface Shape5 extends Instantiator {
+        Object create(Object a, Object b, Object c, Object d, Object e);
+
+        default Object newInstance(Object[] args) throws Exception {
+            try {
+                return create(args[0], args[1], args[2], args[3], args[4]);
+            } catch (Throwable t) {
+                throw new InvocationTargetException(t);
+            }
+        }
+    }
+
+    // Fallbacks .................................................................................................... //
+
+    static final class MethodHandleInstantiator implements Instantiator {
+        private final MethodHandle handle;
+
+        MethodHandleInstantiator(Constructor<?> constructor) throws IllegalAccessException {
+            int arity = constructor.getParameterTypes().length;
+            this.handle = MethodHandles.publicLookup()
+                    .unreflectConstructor(constructor)
+                    .asType(MethodType.genericMethodType(arity))
+                    .asSpreader(Object[].class, arity);
+        }
+
+        public Object newInstance(Object[] args) throws Exception {
+            try {
+                return (Object) handle.invokeExact(args);
+            } catch (Throwable t) {
+                throw new InvocationTargetException(t);
+            }
+        }
+    }
+
+    static final class ReflectiveInstantiator implements Instantiator {
+        private final Constructor<?> constructor;
+
+        ReflectiveInstantiator(Constructor<?> constructor) {
+            this.constructor = constructor;
+        }
+
+        public Object newInstance(Object[] args) throws Exception {
+            return constructor.newInstance(args);
+        }
+    }
+}
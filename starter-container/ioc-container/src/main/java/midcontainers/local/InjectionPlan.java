@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package midcontainers.local;
+
+/**
+ * The outcome of a successful constructor discovery for a binding.
+ * <p/>
+ * A plan records the constructor candidate that could be satisfied, and whether each of its
+ * parameters was injected from a component binding or from a defined value. Replaying a plan
+ * avoids trying the other constructors again for every instantiation.
+ */
+final class InjectionPlan {
+
+    private final ConstructorCandidate candidate;
+    private final boolean[] fromDefinition;
+
+    InjectionPlan(ConstructorCandidate candidate, boolean[] fromDefinition) {
+        this.candidate = candidate;
+        this.fromDefinition = fromDefinition;
+    }
+
+    ConstructorCandidate getCandidate() {
+        return candidate;
+    }
+
+    Instantiator getInstantiator() {
+        return candidate.getInstantiator();
+    }
+
+    int getParameterCount() {
+        return candidate.getParameterCount();
+    }
+
+    Class<?> getParameterType(int index) {
+        return candidate.getParameterType(index);
+    }
+
+    String getQualifier(int index) {
+        return candidate.getQualifier(index);
+    }
+
+    boolean isFromDefinition(int index) {
+        return fromDefinition[index];
+    }
+}
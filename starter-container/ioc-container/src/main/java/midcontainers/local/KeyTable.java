@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package midcontainers.local;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A map from <code>(interface class, qualifier)</code> pairs to values, tuned for lookups.
+ * <p/>
+ * Each interface class has its own small table of qualifiers, found through a
+ * <code>ClassValue</code>. Qualifiers are interned when stored, so lookups with interned
+ * qualifiers (string literals, <code>@Named</code> values) only compare identities; other
+ * qualifiers fall back to <code>equals</code>. Lookups neither lock nor allocate.
+ * <p/>
+ * Tables are copied on write, which suits keys that are declared once and looked up often.
+ *
+ * @param <V> the value type
+ */
+final class KeyTable<V> {
+
+    private static final Row EMPTY = new Row(new String[0], new Object[0]);
+
+    private final Map<Class<?>, Row> rows = new ConcurrentHashMap<Class<?>, Row>();
+
+    private final ClassValue<Row> index = new ClassValue<Row>() {
+        @Override
+        protected Row computeValue(Class<?> interfaceClass) {
+            Row row = rows.get(interfaceClass);
+            return (row == null) ? EMPTY : row;
+        }
+    };
+
+    /**
+     * Looks a value up.
+     *
+     * @param interfaceClass the interface class
+     * @param qualifier      the qualifier, which may be <code>null</code>
+     * @return the value, or <code>null</code> if there is none
+     */
+    @SuppressWarnings("unchecked")
+    V get(Class<?> interfaceClass, String qualifier) {
+        Row row = index.get(interfaceClass);
+        String[] qualifiers = row.qualifiers;
+        for (int i = 0; i < qualifiers.length; i++) {
+            if (qualifiers[i] == qualifier) {
+                return (V) row.values[i];
+            }
+        }
+        if (qualifier != null) {
+            for (int i = 0; i < qualifiers.length; i++) {
+                if (qualifier.equals(qualifiers[i])) {
+                    return (V) row.values[i];
+                }
+            }
+        }
+        return null;
+    }
+
+    synchronized void put(Class<?> interfaceClass, String qualifier, V value) {
+        Row row = rows.get(interfaceClass);
+        if (row == null) {
+            row = EMPTY;
+        }
+        int position = row.positionOf(qualifier);
+        if (position < 0) {
+            row = row.with((qualifier == null) ? null : qualifier.intern(), value);
+        } else {
+            row = row.replace(position, value);
+        }
+        rows.put(interfaceClass, row);
+        index.remove(interfaceClass);
+    }
+
+    synchronized void remove(Class<?> interfaceClass, String qualifier) {
+        Row row = rows.get(interfaceClass);
+        int position = (row == null) ? -1 : row.positionOf(qualifier);
+        if (position >= 0) {
+            rows.put(interfaceClass, row.without(position));
+            index.remove(interfaceClass);
+        }
+    }
+
+    /**
+     * Removes a value only if it is still the one associated with a key.
+     *
+     * @param interfaceClass the interface class
+     * @param qualifier      the qualifier, which may be <code>null</code>
+     * @param value          the expected value
+     */
+    synchronized void remove(Class<?> interfaceClass, String qualifier, V value) {
+        Row row = rows.get(interfaceClass);
+        int position = (row == null) ? -1 : row.positionOf(qualifier);
+        if (position >= 0 && row.values[position] == value) {
+            rows.put(interfaceClass, row.without(position));
+            index.remove(interfaceClass);
+        }
+    }
+
+    synchronized void clear() {
+        for (Class<?> interfaceClass : rows.keySet()) {
+            rows.remove(interfaceClass);
+            index.remove(interfaceClass);
+        }
+    }
+
+    /**
+     * The qualifiers and values of one interface class, never modified once published.
+     */
+    private static final class Row {
+        private final String[] qualifiers;
+        private final Object[] values;
+
+        Row(String[] qualifiers, Object[] values) {
+            this.qualifiers = qualifiers;
+            this.values = values;
+        }
+
+        int positionOf(String qualifier) {
+            for (int i = 0; i < qualifiers.length; i++) {
+                if (qualifiers[i] == qualifier || (qualifier != null && qualifier.equals(qualifiers[i]))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        Row with(String qualifier, Object value) {
+            String[] moreQualifiers = new String[qualifiers.length + 1];
+            Object[] moreValues = new Object[values.length + 1];
+            System.arraycopy(qualifiers, 0, moreQualifiers, 0, qualifiers.length);
+            System.arraycopy(values, 0, moreValues, 0, values.length);
+            moreQualifiers[qualifiers.length] = qualifier;
+            moreValues[values.length] = value;
+            return new Row(moreQualifiers, moreValues);
+        }
+
+        Row replace(int position, Object value) {
+            Object[] newValues = values.clone();
+            newValues[position] = value;
+            return new Row(qualifiers, newValues);
+        }
+
+        Row without(int position) {
+            String[] fewerQualifiers = new String[qualifiers.length - 1];
+            Object[] fewerValues = new Object[values.length - 1];
+            System.arraycopy(qualifiers, 0, fewerQualifiers, 0, position);
+            System.arraycopy(values, 0, fewerValues, 0, position);
+            System.arraycopy(qualifiers, position + 1, fewerQualifiers, position, qualifiers.length - position - 1);
+            System.arraycopy(values, position + 1, fewerValues, position, values.length - position - 1);
+            return new Row(fewerQualifiers, fewerValues);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package midcontainers.local;
+
+import midcontainers.Container;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+
+/**
+ * The invocation handler behind <code>@Lazy</code> proxies.
+ * <p/>
+ * The target is resolved on the first method call, including <code>equals</code>,
+ * <code>hashCode</code> and <code>toString</code>, and then reused for all subsequent calls.
+ * A failed resolution is not remembered: the next call tries again.
+ *
+ * @see midcontainers.Lazy
+ */
+abstract class LazyReference implements InvocationHandler {
+
+    private volatile Object target;
+
+    /**
+     * Obtains the actual component.
+     *
+     * @return the component
+     */
+    protected abstract Object resolve();
+
+    /**
+     * Tells whether a parameter type can be injected lazily.
+     *
+     * @param type the parameter type
+     * @return <code>true</code> for public interfaces
+     */
+    static boolean canProxy(Class<?> type) {
+        return type.isInterface() && Modifier.isPublic(type.getModifiers());
+    }
+
+    /**
+     * Makes a proxy obtaining its target from a container.
+     *
+     * @param container      the container
+     * @param interfaceClass the interface class
+     * @param qualifier      the qualifier, which may be <code>null</code>
+     * @return the proxy
+     */
+    static Object proxy(final Container container, final Class<?> interfaceClass, final String qualifier) {
+        return proxy(interfaceClass, new LazyReference() {
+            @Override
+            protected Object resolve() {
+                return container.obtainReference(interfaceClass, qualifier);
+            }
+        });
+    }
+
+    /**
+     * Makes a proxy.
+     *
+     * @param interfaceClass the interface class
+     * @param reference      the handler resolving the target
+     * @return the proxy
+     */
+    static Object proxy(Class<?> interfaceClass, LazyReference reference) {
+        return Proxy.newProxyInstance(interfaceClass.getClassLoader(), new Class<?>[]{interfaceClass}, reference);
+    }
+
+    private Object target() {
+        Object result = target;
+        if (result == null) {
+            synchronized (this) {
+                result = target;
+                if (result == null) {
+                    result = resolve();
+                    target = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target(), args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
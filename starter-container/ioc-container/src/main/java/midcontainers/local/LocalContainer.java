@@ -3,40 +3,126 @@ package midcontainers.local;
 import midcontainers.Binding;
 import midcontainers.Container;
 import midcontainers.ContainerException;
-import midcontainers.Named;
+import midcontainers.Provider;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.HashMap;
 import java.util.List;
-import java.util.LinkedList;
-import java.lang.reflect.Constructor;
-import java.lang.annotation.Annotation;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
+/**
+ * A container assembling components in the current JVM.
+ * <p/>
+ * A local container may be shared between threads: lookups never lock, and each
+ * <code>SINGLETON</code> binding is instantiated exactly once, only serializing the
+ * threads that race for the very same binding key.
+ */
 public class LocalContainer implements Container {
-	private final Map<String, Object> definitions = new HashMap<String, Object>();
-	private final Map<Binding.Key, Binding> bindings = new HashMap<Binding.Key, Binding>();
-	protected final Map<Binding.Key, Object> singletons = new HashMap<Binding.Key, Object>();
-	private final List<Container> delegates = new LinkedList<Container>();
+	private static final Object[] NO_ARGUMENTS = new Object[0];
+	// Resolution cache marker for keys and names that no delegate can provide
+	private static final Object NOWHERE = new Object();
+
+	private final Map<String, Object> definitions = new ConcurrentHashMap<String, Object>();
+	private final Map<Binding.Key, Binding> bindings = new ConcurrentHashMap<Binding.Key, Binding>();
+	// Lookup view of the bindings, keyed without allocating
+	private final KeyTable<Binding> bindingIndex = new KeyTable<Binding>();
+	protected final Map<Binding.Key, Object> singletons = new ConcurrentHashMap<Binding.Key, Object>();
+	private final List<Container> delegates = new CopyOnWriteArrayList<Container>();
+	// Pools and per-thread instances of POOLED and THREAD bindings
+	private final ConcurrentMap<Binding.Key, ComponentScope> scopes = new ConcurrentHashMap<Binding.Key, ComponentScope>();
+	// Monitors for singleton construction, one per binding key
+	private final Map<Binding.Key, Object> singletonLocks = new ConcurrentHashMap<Binding.Key, Object>();
+	// Constructor discovery outcomes, flushed whenever the graph changes
+	private final Map<Binding.Key, InjectionPlan> plans = new ConcurrentHashMap<Binding.Key, InjectionPlan>();
+	// Delegates owning a binding key or a value name, or NOWHERE
+	private final KeyTable<Object> referenceOwners = new KeyTable<Object>();
+	private final Map<String, Object> valueOwners = new ConcurrentHashMap<String, Object>();
+	private final AtomicInteger generation = new AtomicInteger();
+	private final FactoryEngine factories = new FactoryEngine();
+	// Set once the container is frozen
+	private volatile CompiledGraph frozen;
+	// Set while the container records metrics
+	private volatile ResolutionMetrics metrics;
+	// Set when delegates are queried concurrently
+	private volatile ConcurrentDelegation concurrentDelegation;
 
 	/* Definition */
 	public Container define(String name, Object value) {
-		this.definitions.put(name, value);
+		this.checkNotFrozen();
+		// A null value is the same as no value at all
+		if (value == null)
+			this.definitions.remove(name);
+		else
+			this.definitions.put(name, value);
+		this.graphChanged();
 		return this;
 	}
 
 	public Object definitionValue(String name) {
+		Object value = this.tryDefinitionValue(name);
+		if (value == null) throw new ContainerException("No value for this name");
+		return value;
+	}
+
+	public Object tryDefinitionValue(String name) {
+		if (name == null) return null;
 		Object value = this.definitions.get(name);
 		if (value != null) return value;
-		for (Container delegate : this.delegates) {
-			value = delegate.definitionValue(name);
+
+		// Ask the delegate known to own the value, if any
+		Object owner = this.valueOwners.get(name);
+		if (owner == NOWHERE) return null;
+		if (owner != null) {
+			value = ((Container) owner).tryDefinitionValue(name);
 			if (value != null) return value;
+			this.valueOwners.remove(name, owner);
 		}
-		throw new ContainerException("No value for this name");
+
+		int lookupGeneration = this.generation.get();
+		ConcurrentDelegation concurrently = this.concurrentDelegation;
+		if (concurrently != null && this.delegates.size() > 1) {
+			final String valueName = name;
+			ConcurrentDelegation.Answer answer = concurrently.ask(this.delegates, new Function<Container, Object>() {
+				public Object apply(Container delegate) {
+					return delegate.tryDefinitionValue(valueName);
+				}
+			});
+			// Remember the owner only if no delegate with a higher priority was late
+			if (answer.definitive)
+				this.cacheOwner(this.valueOwners, name, (answer.delegate == null) ? NOWHERE : answer.delegate, lookupGeneration);
+			return answer.value;
+		}
+		for (Container delegate : this.delegates) {
+			value = delegate.tryDefinitionValue(name);
+			if (value != null) {
+				this.cacheOwner(this.valueOwners, name, delegate, lookupGeneration);
+				return value;
+			}
+		}
+		this.cacheOwner(this.valueOwners, name, NOWHERE, lookupGeneration);
+		return null;
 	}
 
 	/* Bindings */
 	public Container declare(Binding binding) {
+		this.checkNotFrozen();
 		this.bindings.put(binding.getKey(), binding);
+		this.bindingIndex.put(binding.getInterfaceClass(), binding.getQualifier(), binding);
+		this.scopes.remove(binding.getKey());
+		this.graphChanged();
 		return this;
 	}
 
@@ -45,52 +131,269 @@ public class LocalContainer implements Container {
 	}
 
 	public <T> T obtainReference(Class<T> interfaceClass, String qualifier) {
-		// Get the correct binding
-		Binding binding = this.bindings.get(new Binding.Key(interfaceClass, qualifier));
-		// If we don't know how to instanciate, try the delegates
-		if (binding == null) {
-			for (Container delegate : delegates) {
-				if (delegate.hasReferenceDeclaredFor(interfaceClass, qualifier)) {
-					T reference = delegate.obtainReference(interfaceClass, qualifier);
-					return reference;
+		// Let failures of frozen components surface with their cause
+		CompiledGraph graph = this.frozen;
+		if (graph != null) {
+			int slot = graph.slotOf(interfaceClass, qualifier);
+			if (slot >= 0) return (T) graph.obtain(slot);
+		}
+
+		T reference = this.tryObtainReference(interfaceClass, qualifier);
+		if (reference == null) {
+			if (this.hasReferenceDeclaredFor(interfaceClass, qualifier))
+				throw new ContainerException("Failed to obtain reference for this interface");
+			throw new ContainerException("No binding for this Interface");
+		}
+		return reference;
+	}
+
+	public <T> T tryObtainReference(Class<T> interfaceClass, String qualifier) {
+		// Frozen containers resolve local bindings through their compiled graph
+		CompiledGraph graph = this.frozen;
+		Binding binding = null;
+		if (graph != null) {
+			int slot = graph.slotOf(interfaceClass, qualifier);
+			if (slot >= 0) {
+				try {
+					return (T) graph.obtain(slot);
+				} catch (ContainerException failed) {
+					return null;
 				}
 			}
-			// If they can't instanciate, fail
-			throw new ContainerException("No binding for this Interface");
+		} else {
+			// Get the correct binding
+			binding = this.bindingIndex.get(interfaceClass, qualifier);
+		}
+		// If we don't know how to instanciate, try the delegates
+		if (binding == null) {
+			Container owner = this.referenceOwnerFor(interfaceClass, qualifier);
+			if (owner == null) return null;
+			ResolutionMetrics recording = this.metrics;
+			if (recording != null) recording.of(interfaceClass, qualifier).delegated();
+			return owner.tryObtainReference(interfaceClass, qualifier);
 		}
 		
 		// We now how to instanciate: we have the correct binding
+		return (T) this.referenceFor(binding);
+	}
+
+	private Object referenceFor(Binding binding) {
+		ResolutionMetrics.Counters counters = null;
+		ResolutionMetrics recording = this.metrics;
+		if (recording != null) {
+			counters = recording.of(binding.getInterfaceClass(), binding.getQualifier());
+			counters.resolved();
+		}
 
 		// Check policy: if singleton try to return the existing reference
-		if (binding.getPolicy() == Binding.Policy.SINGLETON && this.singletons.get(binding.getKey()) != null)
-			return (T) this.singletons.get(binding.getKey());
+		if (binding.getPolicy() == Binding.Policy.SINGLETON) {
+			Object reference = this.singletons.get(binding.getKey());
+			if (reference == null) {
+				synchronized (this.singletonLockFor(binding.getKey())) {
+					reference = this.singletons.get(binding.getKey());
+					if (reference == null) return this.newReference(binding);
+				}
+			}
+			if (counters != null) counters.singletonHit();
+			return reference;
+		}
+
+		// Pooled and per-thread instances are kept in the scope of their binding
+		ComponentScope scope = ComponentScope.of(this.scopes, binding);
+		if (scope != null) {
+			Object reference = scope.acquire();
+			if (reference != null) return reference;
+			reference = this.newReference(binding);
+			if (reference != null) scope.created(reference);
+			return reference;
+		}
+		return this.newReference(binding);
+	}
+
+	public void release(Class<?> interfaceClass, String qualifier, Object reference) {
+		if (reference == null) return;
+		Binding binding = this.bindingIndex.get(interfaceClass, qualifier);
+		if (binding == null) {
+			Container owner = this.referenceOwnerFor(interfaceClass, qualifier);
+			if (owner != null) owner.release(interfaceClass, qualifier, reference);
+			return;
+		}
+		ComponentScope scope = ComponentScope.of(this.scopes, binding);
+		if (scope != null) scope.release(reference);
+	}
+
+	/**
+	 * Gives the occupancy of the pool of a <code>POOLED</code> binding.
+	 *
+	 * @param interfaceClass the interface class
+	 * @param qualifier      the qualifier, which may be <code>null</code>
+	 * @return the pool statistics, or <code>null</code> if there is no local <code>POOLED</code> binding for this key
+	 */
+	public PoolStatistics poolStatistics(Class<?> interfaceClass, String qualifier) {
+		Binding binding = this.bindingIndex.get(interfaceClass, qualifier);
+		if (binding == null || binding.getPolicy() != Binding.Policy.POOLED) return null;
+		return ((ComponentPool) ComponentScope.of(this.scopes, binding)).statistics();
+	}
+
+	private Object newReference(Binding binding) {
+		// Replay the known plan if we have one
+		InjectionPlan plan = this.plans.get(binding.getKey());
+		if (plan != null) {
+			Object[] args = this.argumentsFor(plan);
+			if (args != null) {
+				try {
+					return this.instantiate(binding, plan, args);
+				} catch (Exception failed) {
+					// Let the discovery try the other constructors
+				}
+			}
+			// A delegate changed under our feet: discover again
+			this.plans.remove(binding.getKey());
+		}
 
 		// Instanciate the object
-		Class implementationClass = binding.getImplementationClass();
-		for (Constructor constructor : implementationClass.getConstructors()) {
-			try {
-				// Injection of constructor values
-				Annotation[][] annotations = constructor.getParameterAnnotations();
-				Class<?>[] argsTypes = constructor.getParameterTypes();
-				Object[] args = new Object[argsTypes.length];
-
-				for (int i=0 ; i < argsTypes.length ; i++) {
-					String annotationName = this.qualifierNameFor(annotations[i]);
-					try {
-						args[i] = this.obtainReference(argsTypes[i], annotationName);
-					} catch (ContainerException e) {
-						args[i] = this.definitionValue(annotationName);
-					}
+		int discoveryGeneration = this.generation.get();
+		for (ConstructorCandidate candidate : this.factories.candidatesFor(binding.getImplementationClass())) {
+			// Injection of constructor values
+			boolean[] fromDefinition = new boolean[candidate.getParameterCount()];
+			Object[] args = new Object[candidate.getParameterCount()];
+
+			boolean satisfied = true;
+			for (int i=0 ; i < args.length && satisfied ; i++) {
+				args[i] = this.referenceArgument(candidate, i);
+				if (args[i] == null) {
+					args[i] = this.tryDefinitionValue(candidate.getQualifier(i));
+					fromDefinition[i] = true;
 				}
-				T reference = (T) constructor.newInstance(args);
-				if (binding.getPolicy() == Binding.Policy.SINGLETON)
-					this.singletons.put(binding.getKey(), reference);
-				return reference;
-			} catch (Exception ignored) { System.out.println(ignored.getMessage()); }
+				satisfied = (args[i] != null);
+			}
+			if (!satisfied) continue;
+
+			plan = new InjectionPlan(candidate, fromDefinition);
+			Object reference;
+			try {
+				reference = this.instantiate(binding, plan, args);
+			} catch (Exception failed) {
+				// The constructor itself failed, try the next one
+				continue;
+			}
+			// Do not cache a plan computed against a graph that changed meanwhile
+			if (this.generation.get() == discoveryGeneration)
+				this.plans.put(binding.getKey(), plan);
+			return reference;
 		}
 
-		// If we can't instanciate, fail
-		throw new ContainerException("Failed to obtain reference for this interface");
+		// We can't instanciate
+		return null;
+	}
+
+	private Object[] argumentsFor(InjectionPlan plan) {
+		if (plan.getParameterCount() == 0) return NO_ARGUMENTS;
+		Object[] args = new Object[plan.getParameterCount()];
+		for (int i=0 ; i < args.length ; i++) {
+			if (plan.isFromDefinition(i))
+				args[i] = this.tryDefinitionValue(plan.getQualifier(i));
+			else
+				args[i] = this.referenceArgument(plan.getCandidate(), i);
+			if (args[i] == null) return null;
+		}
+		return args;
+	}
+
+	private Object referenceArgument(ConstructorCandidate candidate, int index) {
+		Class<?> type = candidate.getParameterType(index);
+		String qualifier = candidate.getQualifier(index);
+		Class<?> providedType = candidate.getProvidedType(index);
+		if (providedType != null) {
+			ProviderTarget target = this.providerTargetFor(providedType, qualifier);
+			if (target != null) return new BoundProvider(providedType, qualifier, target);
+		}
+		if (!candidate.isLazy(index)) return this.tryObtainReference(type, qualifier);
+
+		// Lazy parameters only need someone able to provide the component, not the component itself
+		if (!this.hasReferenceDeclaredFor(type, qualifier) && this.referenceOwnerFor(type, qualifier) == null)
+			return null;
+		return LazyReference.proxy(this, type, qualifier);
+	}
+
+	private Object instantiate(Binding binding, InjectionPlan plan, Object[] args) throws Exception {
+		Object reference;
+		ResolutionMetrics recording = this.metrics;
+		if (recording == null) {
+			reference = plan.getInstantiator().newInstance(args);
+		} else {
+			long start = System.nanoTime();
+			reference = plan.getInstantiator().newInstance(args);
+			recording.of(binding.getInterfaceClass(), binding.getQualifier()).constructed(System.nanoTime() - start);
+		}
+		if (binding.getPolicy() == Binding.Policy.SINGLETON)
+			this.singletons.put(binding.getKey(), reference);
+		return reference;
+	}
+
+	/* Providers */
+
+	// Where a provider obtains its references from, valid until the graph changes
+	private static final class ProviderTarget {
+		final int generation;
+		final CompiledGraph graph;
+		final int slot;
+		final Binding binding;
+		final Container owner;
+
+		ProviderTarget(int generation, CompiledGraph graph, int slot, Binding binding, Container owner) {
+			this.generation = generation;
+			this.graph = graph;
+			this.slot = slot;
+			this.binding = binding;
+			this.owner = owner;
+		}
+	}
+
+	private ProviderTarget providerTargetFor(Class<?> interfaceClass, String qualifier) {
+		int targetGeneration = this.generation.get();
+		CompiledGraph graph = this.frozen;
+		if (graph != null) {
+			int slot = graph.slotOf(interfaceClass, qualifier);
+			if (slot >= 0) return new ProviderTarget(targetGeneration, graph, slot, null, null);
+		} else {
+			Binding binding = this.bindingIndex.get(interfaceClass, qualifier);
+			if (binding != null) return new ProviderTarget(targetGeneration, null, -1, binding, null);
+		}
+		Container owner = this.referenceOwnerFor(interfaceClass, qualifier);
+		return (owner == null) ? null : new ProviderTarget(targetGeneration, null, -1, null, owner);
+	}
+
+	// Resolves the binding or the owning delegate once, then again only if the graph changes
+	private final class BoundProvider implements Provider<Object> {
+		private final Class<?> interfaceClass;
+		private final String qualifier;
+		private volatile ProviderTarget target;
+
+		BoundProvider(Class<?> interfaceClass, String qualifier, ProviderTarget target) {
+			this.interfaceClass = interfaceClass;
+			this.qualifier = qualifier;
+			this.target = target;
+		}
+
+		public Object get() {
+			ProviderTarget current = this.target;
+			if (current.generation != LocalContainer.this.generation.get()) {
+				current = LocalContainer.this.providerTargetFor(this.interfaceClass, this.qualifier);
+				if (current == null) throw new ContainerException("No binding for this Interface");
+				this.target = current;
+			}
+
+			Object reference;
+			if (current.graph != null)
+				reference = current.graph.obtain(current.slot);
+			else if (current.binding != null)
+				reference = LocalContainer.this.referenceFor(current.binding);
+			else
+				reference = current.owner.tryObtainReference(this.interfaceClass, this.qualifier);
+			if (reference == null) throw new ContainerException("Failed to obtain reference for this interface");
+			return reference;
+		}
 	}
 
 	/* Delegation */
@@ -99,24 +402,329 @@ public class LocalContainer implements Container {
 	}
 
 	public boolean hasReferenceDeclaredFor(Class<?> interfaceClass, String qualifier) {
-		return (this.bindings.get(new Binding.Key(interfaceClass, qualifier)) != null);
+		CompiledGraph graph = this.frozen;
+		if (graph != null) return (graph.slotOf(interfaceClass, qualifier) >= 0);
+		return (this.bindingIndex.get(interfaceClass, qualifier) != null);
 	}
 
 	public boolean hasValueDefinedFor(String name) {
-		return (this.definitions.get(name) != null);
+		return (name != null && this.definitions.get(name) != null);
 	}
 
 	public Container delegateTo(Container container) {
+		this.checkNotFrozen();
 		this.delegates.add(container);
+		this.graphChanged();
+		return this;
+	}
+
+	/**
+	 * Query all delegates at once when looking for the owner of a component or a value.
+	 * <p/>
+	 * The owner is the first delegate, in declaration order, that has the component or the value:
+	 * lower-priority delegates are only waited for when the ones before them do not. Each lookup waits
+	 * at most <code>timeout</code> for every delegate. A delegate that is late or fails is skipped, and
+	 * the owner found is then not cached, so that the next lookup asks again. This mode pays off when
+	 * several delegates are remote.
+	 *
+	 * @param executor the executor to run delegate queries on
+	 * @param timeout  how long to wait for each delegate
+	 * @param unit     the timeout unit
+	 * @return this container
+	 */
+	public Container delegateConcurrently(Executor executor, long timeout, TimeUnit unit) {
+		this.concurrentDelegation = new ConcurrentDelegation(executor, unit.toNanos(timeout));
+		this.invalidateResolutionCache();
 		return this;
 	}
 
-	private String qualifierNameFor(Annotation[] parameterAnnotations) {
-		for (Annotation annotation : parameterAnnotations) {
-			if (annotation instanceof Named) {
-				return ((Named) annotation).value();
+	/**
+	 * Query delegates one after another, in declaration order, which is the default.
+	 *
+	 * @return this container
+	 */
+	public Container delegateSequentially() {
+		this.concurrentDelegation = null;
+		this.invalidateResolutionCache();
+		return this;
+	}
+
+	private Container referenceOwnerFor(Class<?> interfaceClass, String qualifier) {
+		Object owner = this.referenceOwners.get(interfaceClass, qualifier);
+		if (owner != null) return (owner == NOWHERE) ? null : (Container) owner;
+
+		int lookupGeneration = this.generation.get();
+		owner = NOWHERE;
+		ConcurrentDelegation concurrently = this.concurrentDelegation;
+		if (concurrently != null && this.delegates.size() > 1) {
+			final Class<?> type = interfaceClass;
+			final String name = qualifier;
+			ConcurrentDelegation.Answer answer = concurrently.ask(this.delegates, new Function<Container, Object>() {
+				public Object apply(Container delegate) {
+					return delegate.hasReferenceDeclaredFor(type, name);
+				}
+			});
+			// Do not remember the owner if a delegate with a higher priority was late
+			if (!answer.definitive) return answer.delegate;
+			if (answer.delegate != null) owner = answer.delegate;
+		} else {
+			for (Container delegate : this.delegates) {
+				if (delegate.hasReferenceDeclaredFor(interfaceClass, qualifier)) {
+					owner = delegate;
+					break;
+				}
 			}
 		}
-		return null;
+		this.referenceOwners.put(interfaceClass, qualifier, owner);
+		// The graph changed during the lookup: the answer may already be stale
+		if (this.generation.get() != lookupGeneration) this.referenceOwners.remove(interfaceClass, qualifier, owner);
+		return (owner == NOWHERE) ? null : (Container) owner;
+	}
+
+	private <K> void cacheOwner(Map<K, Object> owners, K key, Object owner, int lookupGeneration) {
+		owners.put(key, owner);
+		// The graph changed during the lookup: the answer may already be stale
+		if (this.generation.get() != lookupGeneration) owners.remove(key, owner);
+	}
+
+	/* Resolution cache */
+
+	/**
+	 * Forget which delegates own which components and values.
+	 * <p/>
+	 * Delegate lookups are remembered, including failed ones, until this container changes.
+	 * Call this method when a delegate gained bindings or values after being queried.
+	 */
+	public void invalidateResolutionCache() {
+		this.referenceOwners.clear();
+		this.valueOwners.clear();
+	}
+
+	/**
+	 * Forget which delegate owns a component.
+	 *
+	 * @param interfaceClass the interface class
+	 * @param qualifier      the qualifier, which may be <code>null</code>
+	 */
+	public void invalidateResolutionCache(Class<?> interfaceClass, String qualifier) {
+		this.referenceOwners.remove(interfaceClass, qualifier);
+	}
+
+	/**
+	 * Forget which delegate owns a value.
+	 *
+	 * @param name the value name
+	 */
+	public void invalidateResolutionCache(String name) {
+		this.valueOwners.remove(name);
+	}
+
+	/* Freezing */
+	public synchronized Container freeze() {
+		if (this.frozen == null) {
+			CompiledGraph graph = CompiledGraph.compile(this.bindings, this.definitions, this.delegates, this.singletons, this.scopes, this.factories);
+			graph.setMetrics(this.metrics);
+			this.frozen = graph;
+			// Let providers switch to the compiled graph
+			this.generation.incrementAndGet();
+		}
+		return this;
+	}
+
+	private void checkNotFrozen() {
+		if (this.frozen != null) throw new ContainerException("This container is frozen");
+	}
+
+	/* Metrics */
+
+	/**
+	 * Start recording resolution metrics, if not recording already.
+	 * <p/>
+	 * While metrics are disabled, resolutions only pay for reading a field.
+	 */
+	public synchronized void enableMetrics() {
+		if (this.metrics == null) this.recordMetrics(new ResolutionMetrics());
+	}
+
+	/**
+	 * Stop recording resolution metrics and discard the counters.
+	 */
+	public synchronized void disableMetrics() {
+		this.recordMetrics(null);
+	}
+
+	/**
+	 * Set the counters back to zero, if recording.
+	 */
+	public synchronized void resetMetrics() {
+		if (this.metrics != null) this.recordMetrics(new ResolutionMetrics());
+	}
+
+	public boolean isMetricsEnabled() {
+		return (this.metrics != null);
+	}
+
+	/**
+	 * Gives a snapshot of the resolution metrics of every binding key resolved through this container,
+	 * in order of first resolution. Keys resolved by delegates count their hops here, and their other
+	 * metrics in the delegate.
+	 *
+	 * @return the metrics by binding key, empty if metrics are disabled
+	 */
+	public Map<Binding.Key, BindingMetrics> metrics() {
+		ResolutionMetrics recording = this.metrics;
+		if (recording == null) return Collections.emptyMap();
+		return Collections.unmodifiableMap(recording.snapshot());
+	}
+
+	/**
+	 * Register the metrics of this container with the platform MBean server, under
+	 * <code>midcontainers:type=LocalContainer,name=</code><em>name</em>. Registering does not enable metrics.
+	 *
+	 * @param name the name of this container
+	 * @return the object name of the MBean, to unregister it
+	 * @throws ContainerException if the name is taken or malformed
+	 */
+	public ObjectName registerMetricsMBean(String name) {
+		try {
+			ObjectName objectName = new ObjectName("midcontainers:type=LocalContainer,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new ContainerMetrics(this), objectName);
+			return objectName;
+		} catch (JMException e) {
+			throw new ContainerException("Could not register the metrics MBean", e);
+		}
+	}
+
+	private void recordMetrics(ResolutionMetrics recording) {
+		this.metrics = recording;
+		CompiledGraph graph = this.frozen;
+		if (graph != null) graph.setMetrics(recording);
+	}
+
+	/* Warm-up */
+
+	/**
+	 * Instantiate every <code>SINGLETON</code> binding now rather than on first request.
+	 * <p/>
+	 * Uses a fork/join pool sized to the available processors; see {@link #warmUp(ForkJoinPool)}.
+	 *
+	 * @return the construction time of each singleton
+	 * @throws ContainerException if some binding cannot be satisfied, or if a singleton fails to construct
+	 */
+	public WarmUpReport warmUp() {
+		ForkJoinPool pool = new ForkJoinPool();
+		try {
+			return this.warmUp(pool);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Instantiate every <code>SINGLETON</code> binding now rather than on first request.
+	 * <p/>
+	 * The dependency graph of the bindings is computed first, as for {@link #freeze()}. Each singleton
+	 * is then created on the pool as soon as the singletons it depends on exist, so that independent
+	 * singletons are created in parallel. Constructions are run as managed blocking operations: the
+	 * pool adds threads when constructors block on I/O.
+	 *
+	 * @param pool the pool to create singletons on
+	 * @return the construction time of each singleton
+	 * @throws ContainerException if some binding cannot be satisfied, or if a singleton fails to construct
+	 */
+	public WarmUpReport warmUp(ForkJoinPool pool) {
+		CompiledGraph graph = this.frozen;
+		if (graph == null)
+			graph = CompiledGraph.compile(this.bindings, this.definitions, this.delegates, this.singletons, this.scopes, this.factories);
+
+		long start = System.nanoTime();
+		Map<Binding.Key, Long> times = new ConcurrentHashMap<Binding.Key, Long>();
+		CompletableFuture<?>[] constructions = new CompletableFuture<?>[graph.size()];
+		for (int slot = 0; slot < graph.size(); slot++)
+			this.scheduleWarmUp(graph, slot, constructions, times, pool);
+		try {
+			CompletableFuture.allOf(constructions).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof ContainerException) throw (ContainerException) e.getCause();
+			throw new ContainerException("Singleton warm-up failed", e.getCause());
+		}
+		long elapsed = System.nanoTime() - start;
+
+		Map<Binding.Key, Long> report = new LinkedHashMap<Binding.Key, Long>();
+		for (int slot = 0; slot < graph.size(); slot++) {
+			Binding.Key key = graph.bindingAt(slot).getKey();
+			if (times.containsKey(key)) report.put(key, times.get(key));
+		}
+		return new WarmUpReport(report, elapsed);
+	}
+
+	private CompletableFuture<?> scheduleWarmUp(CompiledGraph graph, int slot, CompletableFuture<?>[] constructions,
+	                                           final Map<Binding.Key, Long> times, Executor pool) {
+		if (constructions[slot] != null) return constructions[slot];
+
+		final Binding binding = graph.bindingAt(slot);
+		if (binding.getPolicy() != Binding.Policy.SINGLETON || graph.isInstantiated(slot)) {
+			constructions[slot] = CompletableFuture.completedFuture(null);
+			return constructions[slot];
+		}
+
+		// The graph is acyclic, so this recursion terminates
+		int[] dependencies = graph.singletonDependencies(slot);
+		CompletableFuture<?>[] prerequisites = new CompletableFuture<?>[dependencies.length];
+		for (int i=0 ; i < dependencies.length ; i++)
+			prerequisites[i] = this.scheduleWarmUp(graph, dependencies[i], constructions, times, pool);
+
+		constructions[slot] = CompletableFuture.allOf(prerequisites).thenRunAsync(new Runnable() {
+			public void run() {
+				SingletonConstruction construction = new SingletonConstruction(binding);
+				try {
+					ForkJoinPool.managedBlock(construction);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new ContainerException("Interrupted while creating " + binding.getKey(), e);
+				}
+				times.put(binding.getKey(), construction.time);
+			}
+		}, pool);
+		return constructions[slot];
+	}
+
+	// Lets fork/join pools compensate for constructors that block
+	private final class SingletonConstruction implements ForkJoinPool.ManagedBlocker {
+		private final Binding binding;
+		private volatile boolean done;
+		private long time;
+
+		SingletonConstruction(Binding binding) {
+			this.binding = binding;
+		}
+
+		public boolean block() {
+			long start = System.nanoTime();
+			LocalContainer.this.obtainReference(this.binding.getInterfaceClass(), this.binding.getQualifier());
+			this.time = System.nanoTime() - start;
+			this.done = true;
+			return true;
+		}
+
+		public boolean isReleasable() {
+			return this.done;
+		}
+	}
+
+	private Object singletonLockFor(Binding.Key key) {
+		Object lock = this.singletonLocks.get(key);
+		if (lock == null) {
+			Object candidate = new Object();
+			lock = this.singletonLocks.putIfAbsent(key, candidate);
+			if (lock == null) lock = candidate;
+		}
+		return lock;
+	}
+
+	private void graphChanged() {
+		this.generation.incrementAndGet();
+		this.plans.clear();
+		this.invalidateResolutionCache();
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package midcontainers.local;
+
+/**
+ * A snapshot of the occupancy of a <code>POOLED</code> binding.
+ * <p/>
+ * Counters are cumulated since the pool was created. References that are never released keep
+ * counting as in use.
+ *
+ * @see midcontainers.local.LocalContainer#poolStatistics(Class, String)
+ */
+public final class PoolStatistics {
+
+    private final int capacity;
+    private final int idle;
+    private final long created;
+    private final long reused;
+    private final long released;
+    private final long discarded;
+
+    PoolStatistics(int capacity, int idle, long created, long reused, long released, long discarded) {
+        this.capacity = capacity;
+        this.idle = idle;
+        this.created = created;
+        this.reused = reused;
+        this.released = released;
+        this.discarded = discarded;
+    }
+
+    /**
+     * @return the maximum number of idle instances
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of idle instances
+     */
+    public int getIdle() {
+        return idle;
+    }
+
+    /**
+     * @return the number of instances handed out and not released yet
+     */
+    public long getInUse() {
+        return created + reused - released - discarded;
+    }
+
+    /**
+     * @return the number of instances created because none was idle
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    /**
+     * @return the number of idle instances handed out again
+     */
+    public long getReused() {
+        return reused;
+    }
+
+    /**
+     * @return the number of released instances that went back to the pool
+     */
+    public long getReleased() {
+        return released;
+    }
+
+    /**
+     * @return the number of released instances dropped because the pool was full
+     */
+    public long getDiscarded() {
+        return discarded;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolStatistics{" +
+                "capacity=" + capacity +
+                ", idle=" + idle +
+                ", inUse=" + getInUse() +
+                ", created=" + created +
+                ", reused=" + reused +
+                ", released=" + released +
+                ", discarded=" + discarded +
+                '}';
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package midcontainers.local;
+
+import midcontainers.Binding;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The resolution counters of a container, one set per binding key.
+ * <p/>
+ * Counters are striped (<code>LongAdder</code>), so that threads resolving the same hot binding do
+ * not contend on a shared memory location. They are found with a <code>KeyTable</code> lookup,
+ * which neither locks nor allocates; only the first resolution of a key creates its counters.
+ */
+final class ResolutionMetrics {
+
+    // Construction times are counted in power-of-two buckets of nanoseconds
+    static final int BUCKETS = 40;
+
+    private final KeyTable<Counters> index = new KeyTable<Counters>();
+    private final Map<Binding.Key, Counters> counters = new LinkedHashMap<Binding.Key, Counters>();
+
+    Counters of(Class<?> interfaceClass, String qualifier) {
+        Counters found = index.get(interfaceClass, qualifier);
+        return (found != null) ? found : create(interfaceClass, qualifier);
+    }
+
+    private synchronized Counters create(Class<?> interfaceClass, String qualifier) {
+        Binding.Key key = new Binding.Key(interfaceClass, qualifier);
+        Counters created = counters.get(key);
+        if (created == null) {
+            created = new Counters();
+            counters.put(key, created);
+            index.put(interfaceClass, qualifier, created);
+        }
+        return created;
+    }
+
+    synchronized Map<Binding.Key, BindingMetrics> snapshot() {
+        Map<Binding.Key, BindingMetrics> snapshot = new LinkedHashMap<Binding.Key, BindingMetrics>();
+        for (Map.Entry<Binding.Key, Counters> entry : counters.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().snapshot(entry.getKey()));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Gives the histogram bucket of a duration: bucket <code>i</code> holds the durations from
+     * <code>2^(i-1)</code> included to <code>2^i</code> excluded, and the last bucket has no upper bound.
+     *
+     * @param nanos the duration in nanoseconds
+     * @return the bucket index
+     */
+    static int bucketOf(long nanos) {
+        int bucket = 64 - Long.numberOfLeadingZeros(nanos);
+        return (bucket < BUCKETS) ? bucket : BUCKETS - 1;
+    }
+
+    static final class Counters {
+        private final LongAdder resolutions = new LongAdder();
+        private final LongAdder singletonHits = new LongAdder();
+        private final LongAdder delegateHops = new LongAdder();
+        private final LongAdder constructionTime = new LongAdder();
+        private final LongAdder[] histogram = new LongAdder[BUCKETS];
+
+        Counters() {
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram[i] = new LongAdder();
+            }
+        }
+
+        void resolved() {
+            resolutions.increment();
+        }
+
+        void singletonHit() {
+            singletonHits.increment();
+        }
+
+        void delegated() {
+            resolutions.increment();
+            delegateHops.increment();
+        }
+
+        void constructed(long nanos) {
+            constructionTime.add(nanos);
+            histogram[bucketOf(nanos)].increment();
+        }
+
+        BindingMetrics snapshot(Binding.Key key) {
+            long[] buckets = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = histogram[i].sum();
+            }
+            return new BindingMetrics(key, resolutions.sum(), singletonHits.sum(), delegateHops.sum(),
+                    constructionTime.sum(), buckets);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package midcontainers.local;
+
+import midcontainers.Binding;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The outcome of <code>LocalContainer.warmUp()</code>: how long each singleton took to construct.
+ * <p/>
+ * Construction times are measured around the creation of each singleton, once its own
+ * singleton dependencies exist. They are given in nanoseconds, in binding declaration order.
+ *
+ * @see midcontainers.local.LocalContainer#warmUp()
+ */
+public final class WarmUpReport {
+
+    private final Map<Binding.Key, Long> constructionTimes;
+    private final long elapsedTime;
+
+    WarmUpReport(Map<Binding.Key, Long> constructionTimes, long elapsedTime) {
+        this.constructionTimes = Collections.unmodifiableMap(constructionTimes);
+        this.elapsedTime = elapsedTime;
+    }
+
+    /**
+     * Gives the construction time of each singleton created by the warm-up. Singletons that
+     * existed beforehand are not listed.
+     *
+     * @return the construction times in nanoseconds, by binding key
+     */
+    public Map<Binding.Key, Long> getConstructionTimes() {
+        return constructionTimes;
+    }
+
+    /**
+     * Gives the wall-clock duration of the whole warm-up.
+     *
+     * @return the duration in nanoseconds
+     */
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+
+    /**
+     * Gives the sum of the construction times, which exceeds the elapsed time when singletons
+     * were constructed in parallel.
+     *
+     * @return the cumulated construction time in nanoseconds
+     */
+    public long getTotalConstructionTime() {
+        long total = 0L;
+        for (Long time : constructionTimes.values()) {
+            total = total + time;
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        List<Map.Entry<Binding.Key, Long>> slowestFirst = new ArrayList<Map.Entry<Binding.Key, Long>>(constructionTimes.entrySet());
+        Collections.sort(slowestFirst, new Comparator<Map.Entry<Binding.Key, Long>>() {
+            public int compare(Map.Entry<Binding.Key, Long> a, Map.Entry<Binding.Key, Long> b) {
+                return b.getValue().compareTo(a.getValue());
+            }
+        });
+        StringBuilder builder = new StringBuilder("WarmUpReport{singletons=").append(constructionTimes.size())
+                .append(", elapsedTime=").append(elapsedTime / 1000000L).append("ms")
+                .append(", totalConstructionTime=").append(getTotalConstructionTime() / 1000000L).append("ms");
+        for (Map.Entry<Binding.Key, Long> entry : slowestFirst) {
+            builder.append("\n  ").append(entry.getKey()).append(": ").append(entry.getValue() / 1000L).append("us");
+        }
+        return builder.append('}').toString();
+    }
+}
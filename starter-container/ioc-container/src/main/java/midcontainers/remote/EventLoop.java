@@ -0,0 +1,376 @@
+package midcontainers.remote;
+
+import midcontainers.Container;
+import midcontainers.ContainerException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A selector thread serving many client connections of a <code>RemoteContainerServer</code>.
+ * <p/>
+ * The loop reads and decodes requests without blocking, then hands them to the invocation executor,
+ * so that a slow component never holds up the other connections of the loop. A reply is written by
+ * the thread that ran its request as long as the socket takes it, and by the loop otherwise. When
+ * the executor rejects a request, the client gets a failure straight away.
+ * <p/>
+ * Requests of a connection run concurrently, since a client waits for the reply of a call before it
+ * depends on its effects. One-way invocations and batches are the exception: the requests read after
+ * one wait for it to complete. Replies may leave in any order, so clients must speak a protocol
+ * version with correlation ids.
+ * <p/>
+ * Memory per connection follows what the client actually sends: frame buffers grow as bytes arrive
+ * rather than to the announced length, and the loop stops reading from a connection while more than
+ * <code>MAX_PENDING_WRITES</code> bytes of its replies wait for the socket.
+ */
+final class EventLoop implements Runnable {
+
+    // Magic number and version
+    private static final int HANDSHAKE_LENGTH = 5;
+
+    // Frame buffers larger than this are not kept between requests
+    private static final int RETAINED_FRAME_LENGTH = 64 * 1024;
+
+    // Reply bytes a connection may leave unsent before the loop stops reading its requests
+    static final int MAX_PENDING_WRITES = 1024 * 1024;
+
+    private final Container container;
+    private final Executor invocations;
+    private final Selector selector;
+    private final Queue<SocketChannel> registrations = new ConcurrentLinkedQueue<SocketChannel>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(64 * 1024);
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    EventLoop(Container container, Executor invocations, String name) {
+        this.container = container;
+        this.invocations = invocations;
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new ContainerException(e);
+        }
+        this.thread = new Thread(this, name);
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Hands an accepted connection over to this loop.
+     *
+     * @param channel the connection
+     */
+    void register(SocketChannel channel) {
+        registrations.add(channel);
+        selector.wakeup();
+    }
+
+    /**
+     * Closes every connection of the loop, and stops it.
+     */
+    void stop() {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                SocketChannel channel;
+                while ((channel = registrations.poll()) != null) {
+                    open(channel);
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.flush();
+                        }
+                    } catch (IOException e) {
+                        // The client went away
+                        connection.close();
+                    } catch (ContainerException e) {
+                        // The client does not speak the protocol
+                        connection.close();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new ContainerException(e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                ((Connection) key.attachment()).close();
+            }
+            SocketChannel channel;
+            while ((channel = registrations.poll()) != null) {
+                closeQuietly(channel);
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void open(SocketChannel channel) {
+        try {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        } catch (IOException e) {
+            closeQuietly(channel);
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * A client connection. Reading happens on the loop thread only; replies are encoded and written
+     * under the connection monitor, in the order requests complete.
+     */
+    private final class Connection {
+
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private final FrameInput request = new FrameInput();
+        private final FrameOutput reply = new FrameOutput();
+        // Reply bytes the socket did not take yet, guarded by this
+        private final ArrayDeque<ByteBuffer> writes = new ArrayDeque<ByteBuffer>();
+        private int pendingWrites;
+        // Requests read while an ordered one runs, guarded by this
+        private final ArrayDeque<RequestHandler.Request> held = new ArrayDeque<RequestHandler.Request>();
+        private boolean orderedRunning;
+        private boolean closed;
+
+        // The handshake, then the length of each frame
+        private final ByteBuffer header = ByteBuffer.allocate(HANDSHAKE_LENGTH);
+        private RequestHandler handler;
+        private byte[] frame;
+        private int length = -1;
+        private int received;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void read() throws IOException {
+            readBuffer.clear();
+            if (channel.read(readBuffer) < 0) {
+                close();
+                return;
+            }
+            readBuffer.flip();
+            while (readBuffer.hasRemaining()) {
+                if (length < 0) {
+                    while (header.hasRemaining() && readBuffer.hasRemaining()) {
+                        header.put(readBuffer.get());
+                    }
+                    if (header.hasRemaining()) {
+                        return;
+                    }
+                    header.flip();
+                    if (handler == null) {
+                        greet(header.getInt(), header.get() & 0xFF);
+                    } else {
+                        startFrame(header.getInt());
+                    }
+                    header.clear();
+                    header.limit(4);
+                } else {
+                    int count = Math.min(readBuffer.remaining(), length - received);
+                    if (received + count > frame.length) {
+                        frame = Arrays.copyOf(frame, Math.min(length, Math.max(2 * frame.length, received + count)));
+                    }
+                    readBuffer.get(frame, received, count);
+                    received = received + count;
+                    if (received == length) {
+                        dispatch();
+                    }
+                }
+            }
+        }
+
+        private void greet(int magic, int offered) throws IOException {
+            int version = Protocol.negotiate(magic, offered);
+            if (version < Protocol.CORRELATION_IDS) {
+                // Older clients could not tell which call a reply answers
+                version = 0;
+            }
+            ByteBuffer answer = ByteBuffer.allocate(HANDSHAKE_LENGTH);
+            answer.putInt(Protocol.MAGIC).put((byte) version).flip();
+            synchronized (this) {
+                send(answer);
+            }
+            if (version == 0) {
+                throw new ContainerException("The client does not support protocol version " + Protocol.CORRELATION_IDS + " or above");
+            }
+            handler = new RequestHandler(container, version);
+        }
+
+        private void startFrame(int frameLength) {
+            if (frameLength <= 0 || frameLength > Protocol.MAX_FRAME_LENGTH) {
+                throw new ContainerException("Invalid frame length " + frameLength);
+            }
+            // The announced length is not trusted to allocate memory upfront
+            if (frame == null) {
+                frame = new byte[Math.min(frameLength, RETAINED_FRAME_LENGTH)];
+            }
+            length = frameLength;
+            received = 0;
+        }
+
+        // Requests are decoded in order, here, and run on the executor once no ordered request is ahead of them
+        private void dispatch() {
+            RequestHandler.Request r = handler.read(request.receive(frame, length), request);
+            if (frame.length > RETAINED_FRAME_LENGTH) {
+                frame = null;
+            }
+            length = -1;
+            synchronized (this) {
+                if (orderedRunning) {
+                    held.add(r);
+                    // The socket keeps the requests behind it until it completes
+                    updateInterest();
+                    return;
+                }
+                orderedRunning = r.ordered;
+            }
+            execute(r);
+        }
+
+        private void execute(final RequestHandler.Request r) {
+            try {
+                invocations.execute(new Runnable() {
+                    public void run() {
+                        r.run();
+                        complete(r);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                r.failure = new ContainerException("The server is too busy to serve the request", e);
+                complete(r);
+            }
+        }
+
+        private void complete(RequestHandler.Request r) {
+            List<RequestHandler.Request> released = Collections.emptyList();
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                try {
+                    if (handler.writeReply(r, reply)) {
+                        send(reply.take());
+                    }
+                } catch (IOException e) {
+                    close();
+                    return;
+                }
+                if (r.ordered) {
+                    orderedRunning = false;
+                    released = new ArrayList<RequestHandler.Request>();
+                    while (!orderedRunning && !held.isEmpty()) {
+                        RequestHandler.Request next = held.poll();
+                        orderedRunning = next.ordered;
+                        released.add(next);
+                    }
+                    updateInterest();
+                }
+            }
+            for (RequestHandler.Request next : released) {
+                execute(next);
+            }
+        }
+
+        // Called holding the monitor
+        private void send(ByteBuffer buffer) throws IOException {
+            if (writes.isEmpty()) {
+                channel.write(buffer);
+                if (!buffer.hasRemaining()) {
+                    return;
+                }
+            }
+            writes.add(buffer);
+            pendingWrites = pendingWrites + buffer.remaining();
+            updateInterest();
+        }
+
+        // Called holding the monitor. A client that does not read its replies, or whose requests wait
+        // behind an ordered one, gets no more requests read
+        private void updateInterest() {
+            if (closed) {
+                return;
+            }
+            int interest = writes.isEmpty() ? 0 : SelectionKey.OP_WRITE;
+            if (pendingWrites <= MAX_PENDING_WRITES && held.isEmpty()) {
+                interest = interest | SelectionKey.OP_READ;
+            }
+            if (key.interestOps() != interest) {
+                key.interestOps(interest);
+                selector.wakeup();
+            }
+        }
+
+        synchronized void flush() throws IOException {
+            while (!writes.isEmpty()) {
+                ByteBuffer buffer = writes.peek();
+                int before = buffer.remaining();
+                channel.write(buffer);
+                pendingWrites = pendingWrites - (before - buffer.remaining());
+                if (buffer.hasRemaining()) {
+                    break;
+                }
+                writes.poll();
+            }
+            updateInterest();
+        }
+
+        void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                writes.clear();
+                pendingWrites = 0;
+                held.clear();
+            }
+            key.cancel();
+            closeQuietly(channel);
+        }
+    }
+}
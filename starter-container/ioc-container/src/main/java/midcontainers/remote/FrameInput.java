@@ -0,0 +1,161 @@
+package midcontainers.remote;
+
+import midcontainers.ContainerException;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the frames received in one direction of a connection.
+ * <p/>
+ * The same instance is reused for every frame, and must be used by one thread at a time: the
+ * string dictionary relies on frames being read in the order they were sent.
+ *
+ * @see midcontainers.remote.Protocol
+ */
+final class FrameInput {
+
+    private final List<String> dictionary = new ArrayList<String>();
+    private byte[] frame = new byte[256];
+    private int position;
+    private int limit;
+
+    /**
+     * Reads the next frame from a stream.
+     *
+     * @param in the stream
+     * @return the command of the frame
+     */
+    RemoteCommand receive(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length <= 0 || length > Protocol.MAX_FRAME_LENGTH) {
+            throw new ContainerException("Invalid frame length " + length);
+        }
+        if (frame.length < length) {
+            frame = new byte[Math.max(length, frame.length * 2)];
+        }
+        in.readFully(frame, 0, length);
+        return receive(frame, length);
+    }
+
+    /**
+     * Reads a frame that has already been received.
+     *
+     * @param frame  the bytes of the frame, without its length
+     * @param length the length of the frame
+     * @return the command of the frame
+     */
+    RemoteCommand receive(byte[] frame, int length) {
+        this.frame = frame;
+        position = 0;
+        limit = length;
+        return RemoteCommand.of(readByte());
+    }
+
+    int readByte() {
+        if (position >= limit) {
+            throw new ContainerException("Truncated frame");
+        }
+        return frame[position++] & 0xFF;
+    }
+
+    int readVarInt() {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift = shift + 7) {
+            int b = readByte();
+            value = value | ((b & 0x7F) << shift);
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new ContainerException("Malformed variable-length integer");
+    }
+
+    private int readInt() {
+        return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+    }
+
+    private long readLong() {
+        return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+    }
+
+    String readString() {
+        int reference = readVarInt();
+        switch (reference) {
+            case Protocol.STRING_NULL:
+                return null;
+            case Protocol.STRING_NEW:
+                String value = readUtf8();
+                dictionary.add(value);
+                return value;
+            case Protocol.STRING_LITERAL:
+                return readUtf8();
+            default:
+                int index = reference - Protocol.STRING_INDEX;
+                if (index >= dictionary.size()) {
+                    throw new ContainerException("Unknown string reference " + index);
+                }
+                return dictionary.get(index);
+        }
+    }
+
+    private String readUtf8() {
+        int length = readVarInt();
+        checkAvailable(length);
+        String value = new String(frame, position, length, StandardCharsets.UTF_8);
+        position = position + length;
+        return value;
+    }
+
+    /**
+     * Reads a value written by <code>FrameOutput.writeValue</code>.
+     *
+     * @return the value, which may be <code>null</code>
+     */
+    Object readValue() throws IOException, ClassNotFoundException {
+        int tag = readByte();
+        switch (tag) {
+            case Protocol.NULL:
+                return null;
+            case Protocol.TRUE:
+                return Boolean.TRUE;
+            case Protocol.FALSE:
+                return Boolean.FALSE;
+            case Protocol.BYTE:
+                return (byte) readByte();
+            case Protocol.SHORT:
+                return (short) ((readByte() << 8) | readByte());
+            case Protocol.CHAR:
+                return (char) ((readByte() << 8) | readByte());
+            case Protocol.INT:
+                return readInt();
+            case Protocol.LONG:
+                return readLong();
+            case Protocol.FLOAT:
+                return Float.intBitsToFloat(readInt());
+            case Protocol.DOUBLE:
+                return Double.longBitsToDouble(readLong());
+            case Protocol.STRING:
+                return readUtf8();
+            case Protocol.SERIALIZED:
+                int length = readVarInt();
+                checkAvailable(length);
+                ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(frame, position, length));
+                position = position + length;
+                return objects.readObject();
+            default:
+                throw new ContainerException("Unknown value tag " + tag);
+        }
+    }
+
+    private void checkAvailable(int length) {
+        if (length < 0 || length > limit - position) {
+            throw new ContainerException("Truncated frame");
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package midcontainers.remote;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the frames sent in one direction of a connection.
+ * <p/>
+ * The same instance is reused for every frame, and must be used by one thread at a time: the
+ * string dictionary relies on frames reaching the peer in the order they were built. Strings
+ * introduced by a frame that is abandoned, by beginning another one, are taken out of the dictionary.
+ *
+ * @see midcontainers.remote.Protocol
+ */
+final class FrameOutput {
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+    private final DataOutputStream data = new DataOutputStream(buffer);
+    private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+    // Strings added to the dictionary by the frame being built, forgotten if it is not sent
+    private final List<String> added = new ArrayList<String>();
+
+    /**
+     * Starts a new frame.
+     *
+     * @param command the command of the frame
+     * @return this frame
+     */
+    FrameOutput begin(RemoteCommand command) throws IOException {
+        for (String string : added) {
+            dictionary.remove(string);
+        }
+        added.clear();
+        buffer.reset();
+        data.writeByte(command.opcode());
+        return this;
+    }
+
+    FrameOutput writeByte(int value) throws IOException {
+        data.writeByte(value);
+        return this;
+    }
+
+    FrameOutput writeVarInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            data.writeByte((value & 0x7F) | 0x80);
+            value = value >>> 7;
+        }
+        data.writeByte(value);
+        return this;
+    }
+
+    FrameOutput writeString(String value) throws IOException {
+        if (value == null) {
+            return writeVarInt(Protocol.STRING_NULL);
+        }
+        Integer index = dictionary.get(value);
+        if (index != null) {
+            return writeVarInt(index + Protocol.STRING_INDEX);
+        }
+        if (dictionary.size() < Protocol.MAX_DICTIONARY_SIZE) {
+            dictionary.put(value, dictionary.size());
+            added.add(value);
+            writeVarInt(Protocol.STRING_NEW);
+        } else {
+            writeVarInt(Protocol.STRING_LITERAL);
+        }
+        return writeUtf8(value);
+    }
+
+    private FrameOutput writeUtf8(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length);
+        data.write(bytes);
+        return this;
+    }
+
+    /**
+     * Writes a tagged value: primitives and strings natively, anything else with Java serialization.
+     *
+     * @param value the value, which may be <code>null</code>
+     * @return this frame
+     */
+    FrameOutput writeValue(Object value) throws IOException {
+        if (value == null) {
+            data.writeByte(Protocol.NULL);
+        } else if (value instanceof Boolean) {
+            data.writeByte(((Boolean) value) ? Protocol.TRUE : Protocol.FALSE);
+        } else if (value instanceof Integer) {
+            data.writeByte(Protocol.INT);
+            data.writeInt((Integer) value);
+        } else if (value instanceof String) {
+            data.writeByte(Protocol.STRING);
+            writeUtf8((String) value);
+        } else if (value instanceof Long) {
+            data.writeByte(Protocol.LONG);
+            data.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            data.writeByte(Protocol.DOUBLE);
+            data.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            data.writeByte(Protocol.FLOAT);
+            data.writeFloat((Float) value);
+        } else if (value instanceof Short) {
+            data.writeByte(Protocol.SHORT);
+            data.writeShort((Short) value);
+        } else if (value instanceof Byte) {
+            data.writeByte(Protocol.BYTE);
+            data.writeByte((Byte) value);
+        } else if (value instanceof Character) {
+            data.writeByte(Protocol.CHAR);
+            data.writeChar((Character) value);
+        } else {
+            ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+            ObjectOutputStream objects = new ObjectOutputStream(serialized);
+            objects.writeObject(value);
+            objects.close();
+            data.writeByte(Protocol.SERIALIZED);
+            writeVarInt(serialized.size());
+            serialized.writeTo(data);
+        }
+        return this;
+    }
+
+    /**
+     * Sends the frame, prefixed by its length.
+     *
+     * @param out the stream to write to, which is flushed
+     */
+    void send(DataOutputStream out) throws IOException {
+        out.writeInt(buffer.size());
+        buffer.writeTo(out);
+        out.flush();
+        added.clear();
+    }
+
+    /**
+     * Gives the frame prefixed by its length, for channels. The frame counts as sent.
+     *
+     * @return a buffer ready to be written
+     */
+    ByteBuffer take() {
+        ByteBuffer frame = ByteBuffer.allocate(4 + buffer.size());
+        frame.putInt(buffer.size()).put(buffer.toByteArray()).flip();
+        added.clear();
+        return frame;
+    }
+}
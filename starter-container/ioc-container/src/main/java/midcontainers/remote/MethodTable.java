@@ -0,0 +1,163 @@
+package midcontainers.remote;
+
+import midcontainers.ContainerException;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The methods of a remote interface, numbered so that invocations can name them with a small integer.
+ * <p/>
+ * The server numbers the methods of an interface and sends the table to a client the first time
+ * the client obtains a reference on that interface. The client then matches the entries against its
+ * own copy of the interface by name and parameter types, and invokes by method id. The server
+ * dispatches through a spreading method handle per entry, created once per interface.
+ */
+final class MethodTable {
+
+    private static final ClassValue<MethodTable> TABLES = new ClassValue<MethodTable>() {
+        @Override
+        protected MethodTable computeValue(Class<?> interfaceClass) {
+            return new MethodTable(interfaceClass);
+        }
+    };
+
+    private final Method[] methods;
+    private final MethodHandle[] handles;
+
+    private MethodTable(Class<?> interfaceClass) {
+        List<Method> instanceMethods = new ArrayList<Method>();
+        for (Method method : interfaceClass.getMethods()) {
+            if (!Modifier.isStatic(method.getModifiers())) {
+                instanceMethods.add(method);
+            }
+        }
+        this.methods = instanceMethods.toArray(new Method[0]);
+        this.handles = new MethodHandle[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            try {
+                int arity = methods[i].getParameterTypes().length;
+                handles[i] = MethodHandles.publicLookup()
+                        .unreflect(methods[i])
+                        .asType(MethodType.genericMethodType(arity + 1))
+                        .asSpreader(Object[].class, arity);
+            } catch (IllegalAccessException e) {
+                // Interfaces that are not public are invoked reflectively
+                methods[i].setAccessible(true);
+            }
+        }
+    }
+
+    /**
+     * Gives the method table of an interface, computed once.
+     *
+     * @param interfaceClass the interface
+     * @return the table
+     */
+    static MethodTable of(Class<?> interfaceClass) {
+        return TABLES.get(interfaceClass);
+    }
+
+    int size() {
+        return methods.length;
+    }
+
+    Method method(int methodId) {
+        return methods[checked(methodId)];
+    }
+
+    int parameterCount(int methodId) {
+        return methods[checked(methodId)].getParameterTypes().length;
+    }
+
+    /**
+     * Invokes a method on a component.
+     *
+     * @param methodId  the method id
+     * @param target    the component
+     * @param arguments the arguments
+     * @return the result, <code>null</code> for <code>void</code> methods
+     * @throws Throwable whatever the method throws
+     */
+    Object invoke(int methodId, Object target, Object[] arguments) throws Throwable {
+        MethodHandle handle = handles[checked(methodId)];
+        if (handle != null) {
+            return (Object) handle.invokeExact(target, arguments);
+        }
+        try {
+            return methods[methodId].invoke(target, arguments);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private int checked(int methodId) {
+        if (methodId < 0 || methodId >= methods.length) {
+            throw new ContainerException("Unknown method id " + methodId);
+        }
+        return methodId;
+    }
+
+    /**
+     * Writes the method names and parameter type names, in method id order.
+     *
+     * @param out the frame to write to
+     */
+    void writeTo(FrameOutput out) throws IOException {
+        out.writeVarInt(methods.length);
+        for (Method method : methods) {
+            out.writeString(method.getName());
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            out.writeVarInt(parameterTypes.length);
+            for (Class<?> type : parameterTypes) {
+                out.writeString(type.getName());
+            }
+        }
+    }
+
+    /**
+     * Reads a table written by <code>writeTo</code> and matches it against the client copy of the interface.
+     *
+     * @param in             the frame to read from
+     * @param interfaceClass the client copy of the interface
+     * @return the method ids of the methods known to the server
+     */
+    static Map<Method, Integer> readFrom(FrameInput in, Class<?> interfaceClass) {
+        Map<String, Method> bySignature = new HashMap<String, Method>();
+        for (Method method : interfaceClass.getMethods()) {
+            bySignature.put(signatureOf(method.getName(), method.getParameterTypes()), method);
+        }
+
+        Map<Method, Integer> ids = new HashMap<Method, Integer>();
+        int count = in.readVarInt();
+        for (int id = 0; id < count; id++) {
+            StringBuilder signature = new StringBuilder(in.readString()).append('(');
+            int arity = in.readVarInt();
+            for (int i = 0; i < arity; i++) {
+                signature.append(in.readString()).append(';');
+            }
+            Method method = bySignature.get(signature.append(')').toString());
+            if (method != null) {
+                ids.put(method, id);
+            }
+        }
+        return ids;
+    }
+
+    private static String signatureOf(String name, Class<?>[] parameterTypes) {
+        StringBuilder signature = new StringBuilder(name).append('(');
+        for (Class<?> type : parameterTypes) {
+            signature.append(type.getName()).append(';');
+        }
+        return signature.append(')').toString();
+    }
+}
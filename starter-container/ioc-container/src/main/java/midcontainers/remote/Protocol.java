@@ -0,0 +1,157 @@
+package midcontainers.remote;
+
+import midcontainers.ContainerException;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The binary protocol spoken between <code>RemoteContainerClient</code> and <code>Worker</code>.
+ * <p/>
+ * A connection starts with a handshake: the client sends the magic number and the highest protocol
+ * version it speaks, and the server answers with the magic number and the version both will use,
+ * or <code>0</code> if it speaks none of them. Version 2 adds method tables, see <code>MethodTable</code>,
+ * version 3 adds correlation ids so that requests can be pipelined, version 4 adds batches
+ * of invocations, and version 5 adds one-way invocations. Servers in selector mode need version 3
+ * or above, since they reply in the order requests complete.
+ * <p/>
+ * Then each request and each reply is a frame: a 4-byte length followed by that many bytes. A frame
+ * starts with the opcode of a <code>RemoteCommand</code>. Integers are written as variable-length
+ * quantities, and strings through a per-connection dictionary so that a class or method name only
+ * crosses the wire once. Values are tagged: primitives and strings are written natively, and any
+ * other object falls back to Java serialization.
+ *
+ * @see midcontainers.remote.FrameOutput
+ * @see midcontainers.remote.FrameInput
+ */
+final class Protocol {
+
+    static final int MAGIC = 0x4D494443;
+    static final int VERSION = 5;
+    static final int MIN_VERSION = 1;
+
+    // Versions from which references come with method tables, and methods are invoked by id
+    static final int METHOD_IDS = 2;
+
+    // Versions from which requests and replies carry a correlation id after their opcode
+    static final int CORRELATION_IDS = 3;
+
+    // Versions from which several invocations can be sent in one request
+    static final int BATCHES = 4;
+
+    // Versions from which invocations can be one-way
+    static final int ONE_WAY = 5;
+
+    // Frames larger than this are rejected
+    static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+
+    // Strings kept in a connection dictionary, per direction
+    static final int MAX_DICTIONARY_SIZE = 4096;
+
+    // String references: null, a new entry of the dictionary, a string that is not added, or an index plus 3
+    static final int STRING_NULL = 0;
+    static final int STRING_NEW = 1;
+    static final int STRING_LITERAL = 2;
+    static final int STRING_INDEX = 3;
+
+    // Value tags
+    static final byte NULL = 0;
+    static final byte TRUE = 1;
+    static final byte FALSE = 2;
+    static final byte BYTE = 3;
+    static final byte SHORT = 4;
+    static final byte CHAR = 5;
+    static final byte INT = 6;
+    static final byte LONG = 7;
+    static final byte FLOAT = 8;
+    static final byte DOUBLE = 9;
+    static final byte STRING = 10;
+    static final byte SERIALIZED = 11;
+
+    private static final Map<String, Class<?>> PRIMITIVES = new HashMap<String, Class<?>>();
+
+    static {
+        for (Class<?> type : new Class<?>[]{boolean.class, byte.class, char.class, short.class, int.class, long.class, float.class, double.class, void.class}) {
+            PRIMITIVES.put(type.getName(), type);
+        }
+    }
+
+    private Protocol() {
+    }
+
+    /**
+     * Opens a connection on the client side.
+     *
+     * @param in  the stream from the server
+     * @param out the stream to the server
+     * @return the protocol version to use
+     * @throws IOException        if the connection fails
+     * @throws ContainerException if the server does not speak this protocol
+     */
+    static int greetServer(DataInputStream in, DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.flush();
+        if (in.readInt() != MAGIC) {
+            throw new ContainerException("The server does not speak the remote container protocol");
+        }
+        // Servers speak older versions too, but clients only the current one
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new ContainerException("The server does not support protocol version " + VERSION);
+        }
+        return version;
+    }
+
+    /**
+     * Opens a connection on the server side.
+     *
+     * @param in  the stream from the client
+     * @param out the stream to the client
+     * @return the protocol version to use
+     * @throws IOException        if the connection fails
+     * @throws ContainerException if the client does not speak this protocol
+     */
+    static int greetClient(DataInputStream in, DataOutputStream out) throws IOException {
+        int magic = in.readInt();
+        int version = negotiate(magic, in.readUnsignedByte());
+        out.writeInt(MAGIC);
+        out.writeByte(version);
+        out.flush();
+        if (version == 0) {
+            throw new ContainerException("The client does not support protocol version " + MIN_VERSION + " or above");
+        }
+        return version;
+    }
+
+    /**
+     * Chooses the version to speak with a client.
+     *
+     * @param magic   the magic number sent by the client
+     * @param offered the highest version the client speaks
+     * @return the version to use, or <code>0</code> if there is none
+     * @throws ContainerException if the client does not speak this protocol
+     */
+    static int negotiate(int magic, int offered) {
+        if (magic != MAGIC) {
+            throw new ContainerException("The client does not speak the remote container protocol");
+        }
+        int version = Math.min(offered, VERSION);
+        return (version < MIN_VERSION) ? 0 : version;
+    }
+
+    /**
+     * Loads a class by name, including primitive types.
+     *
+     * @param name the class name
+     * @return the class
+     * @throws ClassNotFoundException if there is no such class
+     */
+    static Class<?> classFor(String name) throws ClassNotFoundException {
+        Class<?> primitive = PRIMITIVES.get(name);
+        return (primitive != null) ? primitive : Class.forName(name);
+    }
+}
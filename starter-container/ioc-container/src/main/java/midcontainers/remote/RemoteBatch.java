@@ -0,0 +1,113 @@
+package midcontainers.remote;
+
+import midcontainers.ContainerException;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Invocations recorded against references of a <code>RemoteContainerClient</code>, then sent in
+ * a single request.
+ * <p/>
+ * <code>record</code> wraps a reference obtained from the client: calling the wrapper only records
+ * the invocation and returns <code>null</code>, <code>false</code> or zero. <code>execute</code> sends
+ * the recorded invocations, which the server runs in order, stopping at the first that fails.
+ * <pre>
+ *     RemoteBatch batch = client.batch();
+ *     Counter recorder = batch.record(counter);
+ *     recorder.increment();
+ *     recorder.increment();
+ *     recorder.get();
+ *     List&lt;Object&gt; results = batch.execute();   // [1, 2, 2]
+ * </pre>
+ * A batch is meant to be used by one thread.
+ */
+public final class RemoteBatch {
+
+    private static final Map<Class<?>, Object> DEFAULTS = new HashMap<Class<?>, Object>();
+
+    static {
+        DEFAULTS.put(boolean.class, false);
+        DEFAULTS.put(byte.class, (byte) 0);
+        DEFAULTS.put(short.class, (short) 0);
+        DEFAULTS.put(char.class, (char) 0);
+        DEFAULTS.put(int.class, 0);
+        DEFAULTS.put(long.class, 0L);
+        DEFAULTS.put(float.class, 0.0f);
+        DEFAULTS.put(double.class, 0.0);
+    }
+
+    private final RemoteContainerClient client;
+    private final List<Invocation> invocations = new ArrayList<Invocation>();
+
+    RemoteBatch(RemoteContainerClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Wraps a reference so that its invocations are recorded in this batch.
+     *
+     * @param reference a reference obtained from the client of this batch
+     * @return a reference of the same interfaces, recording invocations
+     * @throws ContainerException if the reference does not come from the client of this batch
+     */
+    public <T> T record(T reference) {
+        final RemoteContainerClient.ReferenceHandler handler = client.handlerOf(reference);
+        if (handler == null) {
+            throw new ContainerException("Only references obtained from the client of the batch can be recorded");
+        }
+        InvocationHandler recorder = new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] parameters) throws Throwable {
+                Integer methodId = handler.ids.get(method);
+                if (methodId == null) {
+                    throw new ContainerException("The server did not describe " + method + ", which cannot be batched");
+                }
+                invocations.add(new Invocation(handler.objectId, methodId, (parameters == null) ? new Object[0] : parameters));
+                return DEFAULTS.get(method.getReturnType());
+            }
+        };
+        return (T) Proxy.newProxyInstance(getClass().getClassLoader(), reference.getClass().getInterfaces(), recorder);
+    }
+
+    /**
+     * @return the number of invocations recorded and not executed yet
+     */
+    public int size() {
+        return invocations.size();
+    }
+
+    /**
+     * Sends the recorded invocations to the server in one request, and starts over with an empty batch.
+     *
+     * @return the results of the invocations, in the order they were recorded
+     * @throws ContainerException if the connection fails, or what the first failing invocation threw,
+     *                            wrapped in a <code>ContainerException</code> when it is checked
+     */
+    public List<Object> execute() {
+        if (invocations.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Invocation> sent = new ArrayList<Invocation>(invocations);
+        invocations.clear();
+        return client.invokeBatch(sent);
+    }
+
+    static final class Invocation {
+
+        final int objectId;
+        final int methodId;
+        final Object[] parameters;
+
+        Invocation(int objectId, int methodId, Object[] parameters) {
+            this.objectId = objectId;
+            this.methodId = methodId;
+            this.parameters = parameters;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package midcontainers.remote;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A request sent by a <code>RemoteContainerClient</code>, completed when its reply arrives.
+ * <p/>
+ * Requests carry a correlation id, so that many of them can be in flight on the same connection
+ * and their replies can come back in any order.
+ */
+abstract class RemoteCall extends CompletableFuture<Object> {
+
+    final RemoteCommand command;
+
+    RemoteCall(RemoteCommand command) {
+        this.command = command;
+    }
+
+    /**
+     * @return <code>false</code> for one-way invocations, which the server only answers when they fail
+     */
+    boolean expectsReply() {
+        return command != RemoteCommand.INVOKE_ONE_WAY;
+    }
+
+    /**
+     * Writes the arguments of the request, after its command and correlation id.
+     *
+     * @param request the frame to write to
+     */
+    abstract void writeArguments(FrameOutput request) throws IOException;
+
+    /**
+     * Reads the result from a <code>RESULT</code> reply. Runs on the thread reading replies, and must
+     * read every string of the reply to keep the connection dictionary in sync.
+     *
+     * @param reply the frame to read from
+     * @return the result
+     */
+    Object readResult(FrameInput reply) throws IOException, ClassNotFoundException {
+        return reply.readValue();
+    }
+}
@@ -1,9 +1,43 @@
 package midcontainers.remote;
 
+import midcontainers.ContainerException;
+
 enum RemoteCommand {
     CHECK_REFERENCE,
     CHECK_DEFINITION,
     GET_REFERENCE,
     GET_DEFINITION,
-    INVOKE
-}
\ No newline at end of file
+    INVOKE,
+
+    // Replies
+    RESULT,
+    FAILURE,
+
+    // Since protocol version 2
+    INVOKE_ID,
+
+    // Since protocol version 4
+    INVOKE_BATCH,
+
+    // Since protocol version 5: answered by a ONE_WAY_FAILURE, or not at all
+    INVOKE_ONE_WAY,
+    ONE_WAY_FAILURE;
+
+    private static final RemoteCommand[] COMMANDS = values();
+
+    // Opcodes are the ordinals: new commands go last
+
+    /**
+     * @return the opcode of the command on the wire
+     */
+    byte opcode() {
+        return (byte) ordinal();
+    }
+
+    static RemoteCommand of(int opcode) {
+        if (opcode < 0 || opcode >= COMMANDS.length) {
+            throw new ContainerException("Unknown opcode " + opcode);
+        }
+        return COMMANDS[opcode];
+    }
+}
@@ -2,31 +2,78 @@ package midcontainers.remote;
 
 import midcontainers.Container;
 import midcontainers.Binding;
+import midcontainers.Idempotent;
+import midcontainers.OneWay;
 
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import midcontainers.ContainerException;
 import java.io.IOException;
 import java.net.Socket;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 public class RemoteContainerClient implements Container {
-    private ObjectOutputStream out;
-    private ObjectInputStream in;
+    // Any number of threads can have requests in flight: requests are written under the request
+    // monitor, and a reader thread hands each reply to the call with the same correlation id
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final DataInputStream in;
+    private final FrameOutput request = new FrameOutput();
+    private final FrameInput reply = new FrameInput();
+    private final AtomicInteger correlations = new AtomicInteger();
+    private final Map<Integer, RemoteCall> pending = new ConcurrentHashMap<Integer, RemoteCall>();
+    // Method ids of the interfaces described by the server
+    private final Map<Class<?>, Map<Method, Integer>> methodIds = new ConcurrentHashMap<Class<?>, Map<Method, Integer>>();
+    // Interfaces of the remote objects, to name the methods of failed one-way invocations
+    private final Map<Integer, Class<?>> remoteInterfaces = new ConcurrentHashMap<Integer, Class<?>>();
+    private volatile ContainerException closed;
+    private volatile RemoteFailureListener failureListener;
+    private final ResultCache resultCache = new ResultCache(this);
 
     public RemoteContainerClient(String host, int port) {
-        try {                                                       
-            Socket socket = new Socket(host, port);                 
-            // /!\ ORDER MATTERS OR YOU DEADLOCK /!\                
-            out = new ObjectOutputStream(socket.getOutputStream()); 
-            in = new ObjectInputStream(socket.getInputStream());    
-        } catch (IOException e) {                                   
-            throw new ContainerException(e);                        
-        }                                                           
-    }
-                                                                                              
+        try {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            Protocol.greetServer(in, out);
+        } catch (IOException e) {
+            throw new ContainerException(e);
+        }
+        Thread reader = new Thread(new Runnable() {
+            public void run() {
+                readReplies();
+            }
+        }, "RemoteContainerClient reader " + host + ":" + port);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Closes the connection to the server. Calls still waiting for their reply fail with a
+     * <code>ContainerException</code>, and so do the references obtained from this client.
+     */
+    public void close() {
+        shutdown(new ContainerException("The remote container client is closed"));
+    }
+
     public Container delegateTo(Container container) throws UnsupportedOperationException {                                
         throw new UnsupportedOperationException("A remote container client does not support delegation");                  
     }                                                                                                                      
@@ -39,93 +86,510 @@ public class RemoteContainerClient implements Container {
         throw new UnsupportedOperationException("A remote container client can only obtain references and defined values");
     }
 
+    public Container freeze() throws UnsupportedOperationException {
+        throw new UnsupportedOperationException("A remote container client can only obtain references and defined values");
+    }
+
+    /**
+     * Does nothing for the references obtained from this client: the server keeps its components, so
+     * that there is nothing to give back.
+     *
+     * @throws ContainerException if the reference was not obtained from this client
+     */
+    public void release(Class<?> interfaceClass, String qualifier, Object reference) {
+        if (reference != null && handlerOf(reference) == null) {
+            throw new ContainerException("The reference was not obtained from this client");
+        }
+    }
+
     public <T> T obtainReference(Class<T> interfaceClass){
     	return obtainReference(interfaceClass,null);
     }
  
     public <T> T obtainReference(Class<T> interfaceClass, String qualifier){
-        try {
-            out.writeObject(RemoteCommand.GET_REFERENCE);
-            out.writeObject(interfaceClass.getName());
-            out.writeObject(qualifier);
-            out.flush();
-            final int objectId = (Integer) in.readObject();
-            InvocationHandler handler = new InvocationHandler() {
-                public Object invoke(Object proxy, Method method, Object[] parameters) throws Throwable {
-                    // TODO: la suite du protocole pour un INVOKE, en particulier lui passer objectId et le nom de méthode
-                    out.writeObject(RemoteCommand.INVOKE);
-                    out.writeInt(objectId);
-                    out.writeObject(method.getName());
-                    if (parameters == null) {
-                        out.writeInt(0);
-                    } else {
-                        out.writeInt(parameters.length);
-                        for (Class<?> type : method.getParameterTypes()) {
-                            out.writeObject(type.getName());
-                        }
-                        for (Object param : parameters){
-                            out.writeObject(param);
+        T reference = tryObtainReference(interfaceClass, qualifier);
+        if (reference == null) {
+            throw new ContainerException("No reference available for this interface");
+        }
+        return reference;
+    }
+
+    public <T> T tryObtainReference(final Class<T> interfaceClass, final String qualifier){
+        final Integer objectId = lookup(interfaceClass, qualifier);
+        if (objectId == null) {
+            return null;
+        }
+        InvocationHandler handler = new ReferenceHandler(objectId, methodIdsOf(interfaceClass), oneWayMethodsOf(interfaceClass), timesToLiveOf(interfaceClass));
+
+        // Fabrique un proxy sur l'interface interfaceClass
+        return (T) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{interfaceClass}, handler);
+    }
+
+    /**
+     * Sets the listener receiving the failures of one-way invocations, which are dropped when there is none.
+     * The listener runs on a pool thread, and what it throws is ignored.
+     *
+     * @param listener the listener, or <code>null</code>
+     * @see midcontainers.OneWay
+     */
+    public void setFailureListener(RemoteFailureListener listener) {
+        this.failureListener = listener;
+    }
+
+    /**
+     * @return the cache of the results of <code>@Idempotent</code> methods
+     * @see midcontainers.Idempotent
+     */
+    public ResultCache resultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Starts a batch of invocations, sent to the server in a single request.
+     *
+     * @return a new batch
+     * @see midcontainers.remote.RemoteBatch
+     */
+    public RemoteBatch batch() {
+        return new RemoteBatch(this);
+    }
+
+    /**
+     * Same as <code>obtainAsyncReference(interfaceClass, null, asyncInterface)</code>.
+     */
+    public <A> A obtainAsyncReference(Class<?> interfaceClass, Class<A> asyncInterface) {
+        return obtainAsyncReference(interfaceClass, null, asyncInterface);
+    }
+
+    /**
+     * Obtains a reference whose methods do not wait for the server.
+     * <p/>
+     * Every method of <code>asyncInterface</code> stands for the method of <code>interfaceClass</code>
+     * with the same name and parameter types, and returns a <code>CompletableFuture</code> (or one of its
+     * supertypes) that completes with the result of the remote call, or with the exception it threw.
+     * Futures complete outside of the thread reading replies, so their callbacks may call the server.
+     *
+     * @param interfaceClass the interface declared on the server
+     * @param qualifier      the qualifier, or <code>null</code>
+     * @param asyncInterface the asynchronous sibling of <code>interfaceClass</code>
+     * @return a proxy implementing <code>asyncInterface</code>
+     * @throws ContainerException if the interfaces do not match, or if the server has no such reference
+     */
+    public <A> A obtainAsyncReference(Class<?> interfaceClass, String qualifier, Class<A> asyncInterface) {
+        // Match the interfaces before asking the server, which would otherwise keep an unused object
+        final Map<Method, Method> targets = new HashMap<Method, Method>();
+        for (Method method : asyncInterface.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            if (!method.getReturnType().isAssignableFrom(CompletableFuture.class)) {
+                throw new ContainerException(method + " does not return a CompletableFuture");
+            }
+            try {
+                targets.put(method, interfaceClass.getMethod(method.getName(), method.getParameterTypes()));
+            } catch (NoSuchMethodException e) {
+                throw new ContainerException("No method of " + interfaceClass.getName() + " matches " + method);
+            }
+        }
+
+        final Integer objectId = lookup(interfaceClass, qualifier);
+        if (objectId == null) {
+            throw new ContainerException("No reference available for this interface");
+        }
+        final Map<Method, Integer> ids = methodIdsOf(interfaceClass);
+        InvocationHandler handler = new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] parameters) throws Throwable {
+                Method target = targets.get(method);
+                if (target == null) {
+                    // Methods of Object
+                    return await(call(objectId, ids, method, parameters));
+                }
+                return handOff(call(objectId, ids, target, parameters));
+            }
+        };
+        return (A) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{asyncInterface}, handler);
+    }
+
+    // Asks the server for a reference, and gives the id of the remote object
+    private Integer lookup(final Class<?> interfaceClass, final String qualifier) {
+        return (Integer) exchange(submit(new RemoteCall(RemoteCommand.GET_REFERENCE) {
+            void writeArguments(FrameOutput request) throws IOException {
+                request.writeString(interfaceClass.getName()).writeString(qualifier);
+            }
+
+            Object readResult(FrameInput reply) throws IOException, ClassNotFoundException {
+                Object objectId = reply.readValue();
+                if (objectId != null && reply.readByte() != 0) {
+                    methodIds.put(interfaceClass, MethodTable.readFrom(reply, interfaceClass));
+                }
+                if (objectId != null) {
+                    remoteInterfaces.put((Integer) objectId, interfaceClass);
+                }
+                return objectId;
+            }
+        }));
+    }
+
+    private static Set<Method> oneWayMethodsOf(Class<?> interfaceClass) {
+        Set<Method> oneWay = new HashSet<Method>();
+        for (Method method : interfaceClass.getMethods()) {
+            if (method.isAnnotationPresent(OneWay.class)) {
+                if (method.getReturnType() != void.class) {
+                    throw new ContainerException("The one-way method " + method + " does not return void");
+                }
+                oneWay.add(method);
+            }
+        }
+        return oneWay;
+    }
+
+    // How long the results of the idempotent methods of an interface are kept, in nanoseconds
+    private static Map<Method, Long> timesToLiveOf(Class<?> interfaceClass) {
+        Map<Method, Long> timesToLive = new HashMap<Method, Long>();
+        for (Method method : interfaceClass.getMethods()) {
+            Idempotent idempotent = method.getAnnotation(Idempotent.class);
+            if (idempotent != null) {
+                timesToLive.put(method, idempotent.unit().toNanos(idempotent.ttl()));
+            }
+        }
+        return timesToLive;
+    }
+
+    private Map<Method, Integer> methodIdsOf(Class<?> interfaceClass) {
+        Map<Method, Integer> ids = methodIds.get(interfaceClass);
+        return (ids != null) ? ids : Collections.<Method, Integer>emptyMap();
+    }
+
+    // Sends a method invocation on a remote object
+    private RemoteCall call(final int objectId, Map<Method, Integer> ids, final Method method, final Object[] parameters) {
+        final Integer methodId = ids.get(method);
+        if (methodId != null) {
+            return submit(new RemoteCall(RemoteCommand.INVOKE_ID) {
+                void writeArguments(FrameOutput request) throws IOException {
+                    request.writeVarInt(objectId).writeVarInt(methodId);
+                    if (parameters != null) {
+                        for (Object parameter : parameters) {
+                            request.writeValue(parameter);
                         }
                     }
-                    out.flush();
-                    return in.readObject();
                 }
-        };
+            });
+        }
 
-        // Fabrique un proxy sur l'interface interfaceClass
-        return (T) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{interfaceClass}, handler);
+        // Methods the server did not describe, such as those of Object, are invoked by name
+        return submit(new RemoteCall(RemoteCommand.INVOKE) {
+            void writeArguments(FrameOutput request) throws IOException {
+                request.writeVarInt(objectId).writeString(method.getName());
+                int count = (parameters == null) ? 0 : parameters.length;
+                request.writeVarInt(count);
+                for (Class<?> type : method.getParameterTypes()) {
+                    request.writeString(type.getName());
+                }
+                for (int i = 0; i < count; i++) {
+                    request.writeValue(parameters[i]);
+                }
+            }
+        });
+    }
 
-        } catch (IOException e) {
-            throw new ContainerException(e);
-        } catch (ClassNotFoundException e) {
-            throw new ContainerException(e);
+    // Sends a batch of invocations, and gives their results in order
+    List<Object> invokeBatch(final List<RemoteBatch.Invocation> invocations) {
+        return (List<Object>) exchange(submit(new RemoteCall(RemoteCommand.INVOKE_BATCH) {
+            void writeArguments(FrameOutput request) throws IOException {
+                request.writeVarInt(invocations.size());
+                for (RemoteBatch.Invocation invocation : invocations) {
+                    request.writeVarInt(invocation.objectId).writeVarInt(invocation.methodId);
+                    for (Object parameter : invocation.parameters) {
+                        request.writeValue(parameter);
+                    }
+                }
+            }
+
+            Object readResult(FrameInput reply) throws IOException, ClassNotFoundException {
+                int count = reply.readVarInt();
+                List<Object> results = new ArrayList<Object>(count);
+                for (int i = 0; i < count; i++) {
+                    results.add(reply.readValue());
+                }
+                return results;
+            }
+        }));
+    }
+
+    // The handler of a reference obtained from this client, or null
+    ReferenceHandler handlerOf(Object reference) {
+        if (reference == null || !Proxy.isProxyClass(reference.getClass())) {
+            return null;
+        }
+        InvocationHandler handler = Proxy.getInvocationHandler(reference);
+        if (handler instanceof ReferenceHandler && ((ReferenceHandler) handler).client() == this) {
+            return (ReferenceHandler) handler;
+        }
+        return null;
+    }
+
+    /**
+     * Invokes the methods of a remote object, by id when the server described them.
+     */
+    final class ReferenceHandler implements InvocationHandler {
+
+        final int objectId;
+        final Map<Method, Integer> ids;
+        private final Set<Method> oneWay;
+        private final Map<Method, Long> timesToLive;
+
+        ReferenceHandler(int objectId, Map<Method, Integer> ids, Set<Method> oneWay, Map<Method, Long> timesToLive) {
+            this.objectId = objectId;
+            this.ids = ids;
+            this.oneWay = oneWay;
+            this.timesToLive = timesToLive;
+        }
+
+        public Object invoke(Object proxy, Method method, final Object[] parameters) throws Throwable {
+            final Integer methodId = ids.get(method);
+            if (methodId != null && oneWay.contains(method)) {
+                submit(new RemoteCall(RemoteCommand.INVOKE_ONE_WAY) {
+                    void writeArguments(FrameOutput request) throws IOException {
+                        request.writeVarInt(objectId).writeVarInt(methodId);
+                        if (parameters != null) {
+                            for (Object parameter : parameters) {
+                                request.writeValue(parameter);
+                            }
+                        }
+                    }
+                });
+                return null;
+            }
+            Long timeToLive = timesToLive.get(method);
+            if (timeToLive == null) {
+                return await(call(objectId, ids, method, parameters));
+            }
+
+            ResultCache.Key key = new ResultCache.Key(objectId, method, parameters);
+            Object result = resultCache.get(key);
+            if (result != ResultCache.MISS) {
+                return result;
+            }
+            long generation = resultCache.generation();
+            result = await(call(objectId, ids, method, parameters));
+            resultCache.put(key, result, timeToLive, generation);
+            return result;
+        }
+
+        RemoteContainerClient client() {
+            return RemoteContainerClient.this;
         }
     }
 
+    // Gives a future completed away from the reader thread, where a blocking callback would stall every call
+    private static CompletableFuture<Object> handOff(RemoteCall call) {
+        final CompletableFuture<Object> future = new CompletableFuture<Object>();
+        call.whenCompleteAsync(new BiConsumer<Object, Throwable>() {
+            public void accept(Object value, Throwable failure) {
+                if (failure != null) {
+                    future.completeExceptionally(failure);
+                } else {
+                    future.complete(value);
+                }
+            }
+        });
+        return future;
+    }
+
     public Object definitionValue(String name){
-    	try {
-            out.writeObject(RemoteCommand.GET_DEFINITION);
-            out.writeObject(name);
-            out.flush();
-            return in.readObject();
-        } catch (IOException e) {                                                      
-            throw new ContainerException(e);
-        } catch (ClassNotFoundException e) {                                           
-            throw new ContainerException(e);                                           
-        } 
+        Object value = tryDefinitionValue(name);
+        if (value == null) {
+            throw new ContainerException("No value for this name");
+        }
+        return value;
+    }
+
+    public Object tryDefinitionValue(final String name){
+        return exchange(submit(new RemoteCall(RemoteCommand.GET_DEFINITION) {
+            void writeArguments(FrameOutput request) throws IOException {
+                request.writeString(name);
+            }
+        }));
     }
 
     public boolean hasReferenceDeclaredFor(Class<?> interfaceClass){
         return hasReferenceDeclaredFor(interfaceClass,null);
     }
 
-    public boolean hasReferenceDeclaredFor(Class<?> interfaceClass, String qualifier){
-        try {                                                                          
-            out.writeObject(RemoteCommand.CHECK_REFERENCE);                                          
-            out.writeObject(interfaceClass.getName());                                 
-            out.writeObject(qualifier);                                                
-            out.flush();                                                               
-            return (Boolean) in.readObject();                                          
-        } catch (IOException e) {                                                      
-            throw new ContainerException(e);                                           
-        } catch (ClassNotFoundException e) {                                           
-            throw new ContainerException(e);                                           
-        }            
+    public boolean hasReferenceDeclaredFor(final Class<?> interfaceClass, final String qualifier){
+        return (Boolean) exchange(submit(new RemoteCall(RemoteCommand.CHECK_REFERENCE) {
+            void writeArguments(FrameOutput request) throws IOException {
+                request.writeString(interfaceClass.getName()).writeString(qualifier);
+            }
+        }));
     }
-    public boolean hasValueDefinedFor(String name){
-    	try{
-            out.writeObject(RemoteCommand.CHECK_DEFINITION);                                          
-            out.writeObject(name);                                                                             
-            out.flush();                                                               
-            return (Boolean) in.readObject();                                          
-        } catch (IOException e) {                                                      
-            throw new ContainerException(e);                                           
-        } catch (ClassNotFoundException e) {                                           
-            throw new ContainerException(e);                                           
-        }           
+
+    public boolean hasValueDefinedFor(final String name){
+        return (Boolean) exchange(submit(new RemoteCall(RemoteCommand.CHECK_DEFINITION) {
+            void writeArguments(FrameOutput request) throws IOException {
+                request.writeString(name);
+            }
+        }));
     }
 
+    // Sends a request without waiting for its reply
+    private RemoteCall submit(RemoteCall call) {
+        int correlation = correlations.incrementAndGet();
+        if (!call.expectsReply()) {
+            send(call, correlation);
+            call.complete(null);
+            return call;
+        }
+        pending.put(correlation, call);
+        // Checked after registering, so that shutdown() either sees the call or the call sees the failure
+        if (closed != null) {
+            pending.remove(correlation);
+            throw new ContainerException("The connection to the server is closed", closed);
+        }
+        try {
+            send(call, correlation);
+        } catch (RuntimeException e) {
+            pending.remove(correlation);
+            throw e;
+        }
+        return call;
+    }
 
+    private void send(RemoteCall call, int correlation) {
+        if (closed != null) {
+            throw new ContainerException("The connection to the server is closed", closed);
+        }
+        try {
+            synchronized (request) {
+                request.begin(call.command).writeVarInt(correlation);
+                call.writeArguments(request);
+                request.send(out);
+            }
+        } catch (IOException e) {
+            throw new ContainerException(e);
+        }
+    }
 
+    // Waits for the reply to a call, and gives its result or throws its failure
+    private static Object await(RemoteCall call) throws Throwable {
+        try {
+            return call.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ContainerException("Interrupted while waiting for the server", e);
+        }
+    }
+
+    // Same as await(), for container operations that only throw container exceptions
+    private static Object exchange(RemoteCall call) {
+        try {
+            return await(call);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new ContainerException(t);
+        }
+    }
+
+    // Runs on the reader thread until the connection is closed
+    private void readReplies() {
+        try {
+            while (true) {
+                RemoteCommand command = reply.receive(in);
+                int correlation = reply.readVarInt();
+                if (command == RemoteCommand.ONE_WAY_FAILURE) {
+                    int objectId = reply.readVarInt();
+                    oneWayFailed(methodOf(objectId, reply.readVarInt()), reply);
+                    continue;
+                }
+                RemoteCall call = pending.remove(correlation);
+                if (call == null && command == RemoteCommand.FAILURE) {
+                    // A one-way invocation the server could not even decode
+                    oneWayFailed(null, reply);
+                    continue;
+                }
+                if (call == null) {
+                    throw new ContainerException("Unexpected reply " + correlation);
+                }
+                try {
+                    if (command == RemoteCommand.RESULT) {
+                        call.complete(call.readResult(reply));
+                    } else if (command == RemoteCommand.FAILURE) {
+                        Object failure = reply.readValue();
+                        call.completeExceptionally((failure instanceof Throwable) ? (Throwable) failure : new ContainerException("Malformed failure reply"));
+                    } else {
+                        throw new ContainerException("Unexpected command " + command);
+                    }
+                } catch (ClassNotFoundException e) {
+                    call.completeExceptionally(new ContainerException(e));
+                } catch (RuntimeException e) {
+                    call.completeExceptionally(e);
+                    throw e;
+                }
+            }
+        } catch (IOException e) {
+            shutdown(new ContainerException("The connection to the server was lost", e));
+        } catch (RuntimeException e) {
+            shutdown(new ContainerException("The connection to the server is out of sync", e));
+        }
+    }
+
+    private Method methodOf(int objectId, int methodId) {
+        Class<?> interfaceClass = remoteInterfaces.get(objectId);
+        Map<Method, Integer> ids = (interfaceClass == null) ? null : methodIds.get(interfaceClass);
+        if (ids != null) {
+            for (Map.Entry<Method, Integer> entry : ids.entrySet()) {
+                if (entry.getValue() == methodId) {
+                    return entry.getKey();
+                }
+            }
+        }
+        return null;
+    }
 
-}
\ No newline at end of file
+    // The listener runs away from the reader thread, so that neither a slow nor a failing listener hurts the connection
+    private void oneWayFailed(final Method method, FrameInput reply) throws IOException {
+        Object value;
+        try {
+            value = reply.readValue();
+        } catch (ClassNotFoundException e) {
+            value = new ContainerException(e);
+        }
+        final RemoteFailureListener listener = failureListener;
+        if (listener == null) {
+            return;
+        }
+        final Throwable failure = (value instanceof Throwable) ? (Throwable) value : new ContainerException("Malformed failure reply");
+        CompletableFuture.runAsync(new Runnable() {
+            public void run() {
+                try {
+                    listener.failed(method, failure);
+                } catch (RuntimeException ignored) {
+                    // Nobody to tell
+                }
+            }
+        });
+    }
+
+    private void shutdown(ContainerException cause) {
+        synchronized (pending) {
+            if (closed == null) {
+                closed = cause;
+            }
+        }
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+        for (Integer correlation : pending.keySet()) {
+            RemoteCall call = pending.remove(correlation);
+            if (call != null) {
+                call.completeExceptionally(closed);
+            }
+        }
+    }
+}
@@ -2,31 +2,54 @@ package midcontainers.remote;
 
 import midcontainers.local.LocalContainer;
 import midcontainers.ContainerException;
+import midcontainers.executors.ConnectionExecutors;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.InetSocketAddress;
 import java.net.SocketTimeoutException;
 import java.net.SocketException;
 import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.List;
-import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 
 public class RemoteContainerServer extends LocalContainer {
 
+    // Pending connections the system queues for the accepting thread
+    private static final int BACKLOG = 1024;
+
     private final ServerSocket serverSocket;
     private final int port;
     private final AtomicBoolean running = new AtomicBoolean(false);
     private final Thread acceptingThread;
-    private List<Worker> workers = new ArrayList<Worker>();
+    private final Set<Worker> workers = Collections.newSetFromMap(new ConcurrentHashMap<Worker, Boolean>());
+    private Executor connections = ConnectionExecutors.threadPerConnection();
+
+    // Selector mode: connections are spread over the event loops
+    private EventLoop[] loops;
+    private Executor invocations;
+    private ExecutorService ownedInvocations;
+    private int ioThreads;
+    private int nextLoop;
 
     public RemoteContainerServer(int port) {
         super();
         this.port = port;
         try {
-            this.serverSocket = new ServerSocket();
+            // Opened as a channel, so that accepted sockets can be handed to event loops
+            this.serverSocket = ServerSocketChannel.open().socket();
         } catch (IOException e) {
             throw new ContainerException(e);
         }
@@ -38,12 +61,32 @@ public class RemoteContainerServer extends LocalContainer {
                     try {
                         Socket clientSocket = serverSocket.accept();
 
-                        Worker w = new Worker(clientSocket,reference);
-                        w.start();
+                        if (loops != null) {
+                            loops[nextLoop].register(clientSocket.getChannel());
+                            nextLoop = (nextLoop + 1) % loops.length;
+                            continue;
+                        }
+                        final Worker w = new Worker(clientSocket,reference);
                         workers.add(w);
+                        try {
+                            connections.execute(new Runnable() {
+                                public void run() {
+                                    try {
+                                        w.run();
+                                    } finally {
+                                        workers.remove(w);
+                                    }
+                                }
+                            });
+                        } catch (RejectedExecutionException e) {
+                            workers.remove(w);
+                            w.end();
+                        }
                     } catch (SocketTimeoutException ignored) {
                     } catch (IOException e) {
-                        throw new ContainerException(e);
+                        if (running.get()) {
+                            throw new ContainerException(e);
+                        }
                     }
                 }
             }
@@ -51,17 +94,90 @@ public class RemoteContainerServer extends LocalContainer {
 
     }
 
-    public void start() {                                  
-        try {                                              
-            serverSocket.setSoTimeout(10000);              
-            serverSocket.bind(new InetSocketAddress(port));
-        } catch (SocketException e) {                      
-            throw new ContainerException(e);               
-        } catch (IOException e) {                          
-            throw new ContainerException(e);               
-        }                                                  
-        running.set(true);                                 
-        acceptingThread.start();                           
+    /**
+     * Runs the blocking loop of each connection on the given executor, which must give each
+     * connection its own thread, such as <code>ConnectionExecutors.virtualThreadPerConnection()</code>.
+     * Connections the executor rejects are closed. Must be called before <code>start</code>, and has
+     * no effect in selector mode.
+     *
+     * @param connections the executor, which the server does not shut down
+     * @return this server
+     * @see midcontainers.executors.ConnectionExecutors
+     */
+    public RemoteContainerServer useConnectionExecutor(Executor connections) {
+        if (running.get()) {
+            throw new ContainerException("The server is already started");
+        }
+        this.connections = connections;
+        return this;
+    }
+
+    /**
+     * Serves connections from a few selector threads instead of a thread per connection, so that
+     * many mostly idle clients are cheap. Remote methods run on a pool of
+     * <code>invocationThreads</code> threads, which queues at most <code>queueCapacity</code> requests:
+     * beyond that, requests fail with a <code>ContainerException</code>. Must be called before <code>start</code>.
+     *
+     * @param ioThreads         the number of selector threads
+     * @param invocationThreads the number of threads running remote methods
+     * @param queueCapacity     the number of requests waiting for an invocation thread
+     * @return this server
+     */
+    public RemoteContainerServer useSelectors(int ioThreads, int invocationThreads, int queueCapacity) {
+        final AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(invocationThreads, invocationThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "RemoteContainerServer invocation " + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        useSelectors(ioThreads, executor);
+        ownedInvocations = executor;
+        return this;
+    }
+
+    /**
+     * Serves connections from a few selector threads instead of a thread per connection, running remote
+     * methods on the given executor. Requests it rejects fail with a <code>ContainerException</code>.
+     * Must be called before <code>start</code>.
+     *
+     * @param ioThreads   the number of selector threads
+     * @param invocations the executor running remote methods, which the server does not shut down
+     * @return this server
+     */
+    public RemoteContainerServer useSelectors(int ioThreads, Executor invocations) {
+        if (running.get()) {
+            throw new ContainerException("The server is already started");
+        }
+        if (ioThreads < 1) {
+            throw new ContainerException("At least one selector thread is needed");
+        }
+        this.ioThreads = ioThreads;
+        this.invocations = invocations;
+        this.ownedInvocations = null;
+        return this;
+    }
+
+    public void start() {
+        try {
+            serverSocket.setSoTimeout(10000);
+            serverSocket.bind(new InetSocketAddress(port), BACKLOG);
+        } catch (SocketException e) {
+            throw new ContainerException(e);
+        } catch (IOException e) {
+            throw new ContainerException(e);
+        }
+        if (invocations != null) {
+            loops = new EventLoop[ioThreads];
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new EventLoop(this, invocations, "RemoteContainerServer selector " + port + "-" + i);
+                loops[i].start();
+            }
+        }
+        running.set(true);
+        acceptingThread.start();
     }
 
     public void stop(){
@@ -73,5 +189,13 @@ public class RemoteContainerServer extends LocalContainer {
         }
         for(Worker worker : workers)
             worker.end();
+        if (loops != null) {
+            for (EventLoop loop : loops) {
+                loop.stop();
+            }
+        }
+        if (ownedInvocations != null) {
+            ownedInvocations.shutdownNow();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,21 @@
+package midcontainers.remote;
+
+import java.lang.reflect.Method;
+
+/**
+ * Receives the failures of one-way invocations made through a <code>RemoteContainerClient</code>.
+ * <p/>
+ * The listener is called on a pool thread, never on the thread reading replies from the server, so it
+ * may block or call the server. What it throws is ignored.
+ *
+ * @see midcontainers.OneWay
+ * @see midcontainers.remote.RemoteContainerClient#setFailureListener(RemoteFailureListener)
+ */
+public interface RemoteFailureListener {
+
+    /**
+     * @param method  the interface method invoked, or <code>null</code> if the server could not decode the invocation
+     * @param failure a <code>ContainerException</code> naming the method, caused by what it threw
+     */
+    void failed(Method method, Throwable failure);
+}
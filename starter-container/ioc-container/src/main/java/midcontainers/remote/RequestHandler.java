@@ -0,0 +1,328 @@
+package midcontainers.remote;
+
+import midcontainers.Container;
+import midcontainers.ContainerException;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves the requests of one client connection, whatever thread reads the connection.
+ * <p/>
+ * Handling a request goes in three steps. <code>read</code> decodes the frame, and must be called in
+ * the order frames arrive since strings go through the connection dictionary. The returned
+ * <code>Request</code> can then run on any thread. Finally <code>writeReply</code> encodes its
+ * outcome, and must be called by one thread at a time, in the order replies are sent.
+ */
+final class RequestHandler {
+
+    private final Container container;
+    private final int version;
+    private final AtomicInteger clientObjectsCounter = new AtomicInteger();
+    private final Map<Integer, Object> clientObjects = new ConcurrentHashMap<Integer, Object>();
+    private final Map<Integer, MethodTable> clientTables = new ConcurrentHashMap<Integer, MethodTable>();
+    // Interfaces whose method table the client already has, only used while writing replies
+    private final Set<Class<?>> describedInterfaces = new HashSet<Class<?>>();
+
+    RequestHandler(Container container, int version) {
+        this.container = container;
+        this.version = version;
+    }
+
+    /**
+     * Decodes a request. Requests that cannot be decoded fail when they run.
+     *
+     * @param command the command of the frame
+     * @param frame   the frame, positioned after the command
+     * @return the request
+     */
+    Request read(RemoteCommand command, FrameInput frame) {
+        int correlation = 0;
+        try {
+            correlation = (version >= Protocol.CORRELATION_IDS) ? frame.readVarInt() : 0;
+            return decode(command, correlation, frame);
+        } catch (final Throwable t) {
+            return new Request(correlation) {
+                Object execute() throws Throwable {
+                    throw t;
+                }
+            };
+        }
+    }
+
+    private Request decode(RemoteCommand command, int correlation, FrameInput frame) throws Throwable {
+        switch (command) {
+
+            case CHECK_DEFINITION:
+                final String definition = frame.readString();
+                return new Request(correlation) {
+                    Object execute() {
+                        return container.hasValueDefinedFor(definition);
+                    }
+                };
+
+            case CHECK_REFERENCE:
+                final String checkedName = frame.readString();
+                final String checkedQualifier = frame.readString();
+                return new Request(correlation) {
+                    Object execute() throws Throwable {
+                        return container.hasReferenceDeclaredFor(Protocol.classFor(checkedName), checkedQualifier);
+                    }
+                };
+
+            case GET_DEFINITION:
+                final String name = frame.readString();
+                return new Request(correlation) {
+                    Object execute() {
+                        return container.tryDefinitionValue(name);
+                    }
+                };
+
+            case GET_REFERENCE:
+                return new ReferenceRequest(correlation, frame.readString(), frame.readString());
+
+            case INVOKE_ID:
+                final int objectId = frame.readVarInt();
+                final int methodId = frame.readVarInt();
+                final MethodTable table = clientTables.get(objectId);
+                if (table == null) {
+                    throw new ContainerException("No remote object " + objectId);
+                }
+                final Object[] arguments = new Object[table.parameterCount(methodId)];
+                for (int i = 0; i < arguments.length; i++) {
+                    arguments[i] = frame.readValue();
+                }
+                return new Request(correlation) {
+                    Object execute() throws Throwable {
+                        return table.invoke(methodId, clientObjects.get(objectId), arguments);
+                    }
+                };
+
+            case INVOKE_ONE_WAY:
+                final int targetId = frame.readVarInt();
+                final int oneWayId = frame.readVarInt();
+                final MethodTable targetTable = clientTables.get(targetId);
+                if (targetTable == null) {
+                    throw new ContainerException("No remote object " + targetId);
+                }
+                final Object[] oneWayArguments = new Object[targetTable.parameterCount(oneWayId)];
+                for (int i = 0; i < oneWayArguments.length; i++) {
+                    oneWayArguments[i] = frame.readValue();
+                }
+                Request oneWay = new Request(correlation) {
+                    Object execute() throws Throwable {
+                        return targetTable.invoke(oneWayId, clientObjects.get(targetId), oneWayArguments);
+                    }
+                };
+                oneWay.oneWay = targetTable.method(oneWayId);
+                oneWay.oneWayObjectId = targetId;
+                oneWay.oneWayMethodId = oneWayId;
+                oneWay.ordered = true;
+                return oneWay;
+
+            case INVOKE_BATCH:
+                int count = frame.readVarInt();
+                final List<Integer> objectIds = new ArrayList<Integer>();
+                final List<Integer> methodIds = new ArrayList<Integer>();
+                final List<Object[]> batchArguments = new ArrayList<Object[]>();
+                for (int i = 0; i < count; i++) {
+                    int batchObjectId = frame.readVarInt();
+                    int batchMethodId = frame.readVarInt();
+                    MethodTable batchTable = clientTables.get(batchObjectId);
+                    if (batchTable == null) {
+                        throw new ContainerException("No remote object " + batchObjectId);
+                    }
+                    Object[] values = new Object[batchTable.parameterCount(batchMethodId)];
+                    for (int j = 0; j < values.length; j++) {
+                        values[j] = frame.readValue();
+                    }
+                    objectIds.add(batchObjectId);
+                    methodIds.add(batchMethodId);
+                    batchArguments.add(values);
+                }
+                Request batch = new Request(correlation) {
+                    // In order, stopping at the first failure
+                    Object execute() throws Throwable {
+                        Object[] results = new Object[objectIds.size()];
+                        for (int i = 0; i < results.length; i++) {
+                            int id = objectIds.get(i);
+                            results[i] = clientTables.get(id).invoke(methodIds.get(i), clientObjects.get(id), batchArguments.get(i));
+                        }
+                        return results;
+                    }
+
+                    void writeResult(FrameOutput reply) throws IOException {
+                        Object[] results = (Object[]) result;
+                        reply.writeVarInt(results.length);
+                        for (Object value : results) {
+                            reply.writeValue(value);
+                        }
+                    }
+                };
+                batch.ordered = true;
+                return batch;
+
+            case INVOKE:
+                // Read every string of the frame before anything can fail, to keep dictionaries in sync
+                final int instanceId = frame.readVarInt();
+                final String methodName = frame.readString();
+                final String[] parameterTypeNames = new String[frame.readVarInt()];
+                for (int i = 0; i < parameterTypeNames.length; i++) {
+                    parameterTypeNames[i] = frame.readString();
+                }
+                final Object[] parameters = new Object[parameterTypeNames.length];
+                for (int i = 0; i < parameters.length; i++) {
+                    parameters[i] = frame.readValue();
+                }
+                return new Request(correlation) {
+                    Object execute() throws Throwable {
+                        Class<?>[] parameterTypes = new Class<?>[parameterTypeNames.length];
+                        for (int i = 0; i < parameterTypes.length; i++) {
+                            parameterTypes[i] = Protocol.classFor(parameterTypeNames[i]);
+                        }
+                        Object instance = clientObjects.get(instanceId);
+                        if (instance == null) {
+                            throw new ContainerException("No remote object " + instanceId);
+                        }
+                        Method method = instance.getClass().getMethod(methodName, parameterTypes);
+                        return method.invoke(instance, parameters);
+                    }
+                };
+
+            default:
+                throw new ContainerException("Unexpected command " + command);
+        }
+    }
+
+    /**
+     * Writes the reply to a request that has run.
+     *
+     * @param request the request
+     * @param reply   the frame to build
+     * @return <code>false</code> if there is nothing to send, as for one-way invocations that succeed
+     */
+    boolean writeReply(Request request, FrameOutput reply) throws IOException {
+        if (request.oneWay != null) {
+            if (request.failure == null) {
+                return false;
+            }
+            // Nobody waits for it on the client, so say what failed
+            request.failure = new ContainerException("The one-way invocation of " + request.oneWay + " failed", request.failure);
+            try {
+                begin(reply, RemoteCommand.ONE_WAY_FAILURE, request.correlation).writeVarInt(request.oneWayObjectId).writeVarInt(request.oneWayMethodId).writeValue(request.failure);
+            } catch (NotSerializableException e) {
+                begin(reply, RemoteCommand.ONE_WAY_FAILURE, request.correlation).writeVarInt(request.oneWayObjectId).writeVarInt(request.oneWayMethodId)
+                        .writeValue(new ContainerException(request.failure.toString()));
+            }
+            return true;
+        }
+        if (request.failure == null) {
+            try {
+                begin(reply, RemoteCommand.RESULT, request.correlation);
+                request.writeResult(reply);
+                return true;
+            } catch (NotSerializableException e) {
+                request.failure = e;
+            }
+        }
+        try {
+            begin(reply, RemoteCommand.FAILURE, request.correlation).writeValue(request.failure);
+        } catch (NotSerializableException e) {
+            begin(reply, RemoteCommand.FAILURE, request.correlation).writeValue(new ContainerException(request.failure.toString()));
+        }
+        return true;
+    }
+
+    private FrameOutput begin(FrameOutput reply, RemoteCommand command, int correlation) throws IOException {
+        reply.begin(command);
+        if (version >= Protocol.CORRELATION_IDS) {
+            reply.writeVarInt(correlation);
+        }
+        return reply;
+    }
+
+    /**
+     * A decoded request, waiting to run.
+     */
+    abstract static class Request implements Runnable {
+
+        final int correlation;
+        Object result;
+        Throwable failure;
+        // The method of a one-way invocation, and its ids on the wire
+        Method oneWay;
+        int oneWayObjectId;
+        int oneWayMethodId;
+        // Set for one-way invocations and batches, which must complete before the requests sent after them run
+        boolean ordered;
+
+        Request(int correlation) {
+            this.correlation = correlation;
+        }
+
+        abstract Object execute() throws Throwable;
+
+        void writeResult(FrameOutput reply) throws IOException {
+            reply.writeValue(result);
+        }
+
+        public void run() {
+            try {
+                result = execute();
+            } catch (InvocationTargetException e) {
+                failure = e.getCause();
+            } catch (Throwable t) {
+                failure = t;
+            }
+        }
+    }
+
+    private final class ReferenceRequest extends Request {
+
+        private final String name;
+        private final String qualifier;
+        private Class<?> interfaceClass;
+
+        ReferenceRequest(int correlation, String name, String qualifier) {
+            super(correlation);
+            this.name = name;
+            this.qualifier = qualifier;
+        }
+
+        Object execute() throws Throwable {
+            interfaceClass = Protocol.classFor(name);
+            Object instance = container.tryObtainReference(interfaceClass, qualifier);
+            if (instance == null) {
+                return null;
+            }
+            int id = clientObjectsCounter.getAndIncrement();
+            clientObjects.put(id, instance);
+            if (version >= Protocol.METHOD_IDS) {
+                clientTables.put(id, MethodTable.of(interfaceClass));
+            }
+            return id;
+        }
+
+        void writeResult(FrameOutput reply) throws IOException {
+            reply.writeValue(result);
+            if (result != null && version >= Protocol.METHOD_IDS) {
+                // Only describe each interface once per connection
+                if (describedInterfaces.add(interfaceClass)) {
+                    reply.writeByte(1);
+                    MethodTable.of(interfaceClass).writeTo(reply);
+                } else {
+                    reply.writeByte(0);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package midcontainers.remote;
+
+import midcontainers.ContainerException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The results of <code>@Idempotent</code> methods kept by a <code>RemoteContainerClient</code>.
+ * <p/>
+ * Entries are keyed by remote object, method and arguments. They expire after the time given by the
+ * annotation of their method, and are dropped when next looked up. Once the cache holds more than
+ * <code>capacity</code> entries, the expired and then the least recently used ones are evicted. A
+ * capacity of <code>0</code> disables caching.
+ * <p/>
+ * Lookups take no lock, so that threads sharing a client do not queue on its cache.
+ * <p/>
+ * Strings, primitive wrappers and <code>null</code> are kept as they are. Other results are kept in
+ * serialized form, and every hit deserializes a fresh copy: a caller modifying its result does not
+ * change what later callers get.
+ *
+ * @see midcontainers.Idempotent
+ * @see midcontainers.remote.RemoteContainerClient#resultCache()
+ */
+public final class ResultCache {
+
+    static final int DEFAULT_CAPACITY = 1024;
+
+    // Returned by get() for keys without a live entry
+    static final Object MISS = new Object();
+
+    // Hits refresh the recency of an entry at most this often, so that hot entries are not written on every read
+    static final long RECENCY_GRANULARITY = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final RemoteContainerClient client;
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+    private volatile int capacity = DEFAULT_CAPACITY;
+    // Bumped by invalidations, so that results fetched before them are not cached
+    private final AtomicLong generation = new AtomicLong();
+    // Orders entries stored at the same time, for evictions
+    private final AtomicLong insertions = new AtomicLong();
+    // Held by evictions only
+    private final Object trimLock = new Object();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    // The time source of expirations, replaced by tests
+    private volatile LongSupplier clock = new LongSupplier() {
+        public long getAsLong() {
+            return System.nanoTime();
+        }
+    };
+
+    ResultCache(RemoteContainerClient client) {
+        this.client = client;
+    }
+
+    Object get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            long now = clock.getAsLong();
+            if (entry.expires - now > 0) {
+                if (now - entry.used > RECENCY_GRANULARITY) {
+                    entry.used = now;
+                }
+                hits.increment();
+                return entry.value();
+            }
+            entries.remove(key, entry);
+        }
+        misses.increment();
+        return MISS;
+    }
+
+    long generation() {
+        return generation.get();
+    }
+
+    void put(Key key, Object value, long ttlNanos, long fetchedGeneration) {
+        if (capacity == 0 || fetchedGeneration != generation.get()) {
+            return;
+        }
+        Entry entry;
+        try {
+            entry = new Entry(value, clock.getAsLong(), ttlNanos, insertions.incrementAndGet());
+        } catch (IOException e) {
+            // It came from the server, but may not serialize again on this side
+            return;
+        }
+        entries.put(key, entry);
+        if (fetchedGeneration != generation.get()) {
+            // An invalidation ran while storing it
+            entries.remove(key, entry);
+            return;
+        }
+        if (entries.size() > capacity) {
+            trim();
+        }
+    }
+
+    void useClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    private void trim() {
+        synchronized (trimLock) {
+            int excess = entries.size() - capacity;
+            if (excess <= 0) {
+                return;
+            }
+            long now = clock.getAsLong();
+            List<Map.Entry<Key, Entry>> candidates = new ArrayList<Map.Entry<Key, Entry>>(entries.entrySet());
+            for (Map.Entry<Key, Entry> candidate : candidates) {
+                if (candidate.getValue().expires - now <= 0 && entries.remove(candidate.getKey(), candidate.getValue())) {
+                    excess = excess - 1;
+                }
+            }
+            if (excess <= 0) {
+                return;
+            }
+            Collections.sort(candidates, LEAST_RECENTLY_USED);
+            for (Map.Entry<Key, Entry> candidate : candidates) {
+                if (excess <= 0) {
+                    break;
+                }
+                if (entries.remove(candidate.getKey(), candidate.getValue())) {
+                    excess = excess - 1;
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    private static final Comparator<Map.Entry<Key, Entry>> LEAST_RECENTLY_USED = new Comparator<Map.Entry<Key, Entry>>() {
+        public int compare(Map.Entry<Key, Entry> first, Map.Entry<Key, Entry> second) {
+            Entry a = first.getValue();
+            Entry b = second.getValue();
+            long used = a.used - b.used;
+            if (used != 0) {
+                return (used < 0) ? -1 : 1;
+            }
+            return (a.insertion < b.insertion) ? -1 : ((a.insertion == b.insertion) ? 0 : 1);
+        }
+    };
+
+    /**
+     * @return the number of calls answered from the cache
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of calls to idempotent methods that went to the server
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of entries evicted to respect the capacity
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the number of entries, including expired ones not dropped yet
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Changes the maximum number of entries, evicting the least recently used ones if needed.
+     *
+     * @param capacity the capacity, or <code>0</code> to disable caching
+     */
+    public void setCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new ContainerException("Invalid cache capacity " + capacity);
+        }
+        this.capacity = capacity;
+        trim();
+    }
+
+    /**
+     * Clears the hit, miss and eviction counts.
+     */
+    public void resetMetrics() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    /**
+     * Drops every entry.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    /**
+     * Drops the entries of a remote object.
+     *
+     * @param reference a reference obtained from the client
+     */
+    public void invalidate(Object reference) {
+        invalidate(reference, null);
+    }
+
+    /**
+     * Drops the entries of a remote object for the methods of the given name.
+     *
+     * @param reference  a reference obtained from the client
+     * @param methodName the method name, or <code>null</code> for every method
+     */
+    public void invalidate(Object reference, String methodName) {
+        RemoteContainerClient.ReferenceHandler handler = client.handlerOf(reference);
+        if (handler == null) {
+            throw new ContainerException("The reference was not obtained from this client");
+        }
+        generation.incrementAndGet();
+        Iterator<Key> keys = entries.keySet().iterator();
+        while (keys.hasNext()) {
+            Key key = keys.next();
+            if (key.objectId == handler.objectId && (methodName == null || key.method.getName().equals(methodName))) {
+                keys.remove();
+            }
+        }
+    }
+
+    static final class Key {
+
+        final int objectId;
+        final Method method;
+        private final Object[] arguments;
+        private final int hash;
+
+        Key(int objectId, Method method, Object[] arguments) {
+            this.objectId = objectId;
+            this.method = method;
+            this.arguments = (arguments == null) ? new Object[0] : arguments.clone();
+            this.hash = 31 * (31 * objectId + method.hashCode()) + Arrays.deepHashCode(this.arguments);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return objectId == key.objectId && method.equals(key.method) && Arrays.deepEquals(arguments, key.arguments);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+
+        private final Object value;
+        private final byte[] serialized;
+        final long expires;
+        final long insertion;
+        // Time of the last hit, up to RECENCY_GRANULARITY
+        volatile long used;
+
+        Entry(Object value, long now, long ttlNanos, long insertion) throws IOException {
+            if (isImmutable(value)) {
+                this.value = value;
+                this.serialized = null;
+            } else {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                ObjectOutputStream objects = new ObjectOutputStream(bytes);
+                objects.writeObject(value);
+                objects.close();
+                this.value = null;
+                this.serialized = bytes.toByteArray();
+            }
+            this.expires = now + ttlNanos;
+            this.insertion = insertion;
+            this.used = now;
+        }
+
+        // The values FrameOutput writes natively
+        private static boolean isImmutable(Object value) {
+            return value == null || value instanceof String || value instanceof Integer || value instanceof Long
+                    || value instanceof Boolean || value instanceof Double || value instanceof Float || value instanceof Short
+                    || value instanceof Byte || value instanceof Character;
+        }
+
+        // A copy of the result, for mutable ones
+        Object value() {
+            if (serialized == null) {
+                return value;
+            }
+            try {
+                return new ObjectInputStream(new ByteArrayInputStream(serialized)).readObject();
+            } catch (IOException e) {
+                throw new ContainerException(e);
+            } catch (ClassNotFoundException e) {
+                throw new ContainerException(e);
+            }
+        }
+    }
+}
@@ -3,21 +3,19 @@ package midcontainers.remote;
 import java.net.Socket;
 import midcontainers.ContainerException;
 import midcontainers.Container;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.lang.reflect.Method;
-import java.lang.reflect.InvocationTargetException;
-import java.util.Map;
-import java.util.HashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 
-class Worker extends Thread {
+// Serves one connection, on a thread of the server connection executor
+class Worker implements Runnable {
     private final AtomicBoolean running = new AtomicBoolean(true);
     private final Socket socket;
-    private int clientObjectsCounter = 0;
-    private final Map<Integer, Object> clientObjects = new HashMap<Integer, Object>();
     private final Container conteneur; 
 
     public Worker(Socket socket, Container conteneur) {
@@ -27,83 +25,36 @@ class Worker extends Thread {
 
     public void end(){
         running.set(false);
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
     }
+
     public void run() {
         try {
-            ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
-            ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
-            
-            while (running.get()) {
-                String name;
-                String qualifier;
-                Object instance;
-                int parametersCount;
-                int objectId;
-                Class[] parameterTypes;
-                Object[] parameters;
-
-                RemoteCommand command = (RemoteCommand) in.readObject();
-                switch (command) {
-
-                    case CHECK_DEFINITION:
-                        name = (String) in.readObject();
-                        out.writeObject(conteneur.hasValueDefinedFor(name));
-                        out.flush();
-                        break;
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            RequestHandler handler = new RequestHandler(conteneur, Protocol.greetClient(in, out));
 
-                    case CHECK_REFERENCE:
-                        name = (String) in.readObject();
-                        qualifier = (String) in.readObject();
-                        out.writeObject(conteneur.hasReferenceDeclaredFor(Class.forName(name),qualifier));
-                        out.flush();
-                        break;
-
-                    case GET_DEFINITION:
-                        name = (String) in.readObject();
-                        out.writeObject(conteneur.definitionValue(name));
-                        out.flush();
-                        break;
-
-                    case GET_REFERENCE:
-                        name = (String) in.readObject();
-                        qualifier = (String) in.readObject();
-                        instance = conteneur.obtainReference(Class.forName(name), qualifier);
-                        clientObjects.put(clientObjectsCounter, instance);
-                        out.writeObject(clientObjectsCounter);
-                        out.flush();
-                        clientObjectsCounter = clientObjectsCounter + 1;
-                        break;
-
-                    case INVOKE:
-                        objectId = in.readInt();
-                        name = (String) in.readObject();
-                        parametersCount = in.readInt();
-                        parameters = new Object[parametersCount];
-                        parameterTypes = new Class<?>[parametersCount];
-                        for (int i = 0; i < parametersCount; i++) {
-                            parameterTypes[i] = Class.forName((String) in.readObject());
-                        }
-                        for (int i = 0; i < parametersCount; i++) {
-                            parameters[i] = in.readObject();
-                        }
-
-                        instance = clientObjects.get(objectId);
-                        Method method = instance.getClass().getMethod(name, parameterTypes);
-                        out.writeObject(method.invoke(instance, parameters));
-                        out.flush();
-                        break;
+            FrameInput request = new FrameInput();
+            FrameOutput reply = new FrameOutput();
+            while (running.get()) {
+                RequestHandler.Request r = handler.read(request.receive(in), request);
+                r.run();
+                if (handler.writeReply(r, reply)) {
+                    reply.send(out);
                 }
             }
+        } catch (EOFException e) {
+            // The client closed the connection
         } catch (IOException e) {
-            throw new ContainerException(e);
-        } catch (ClassNotFoundException e) {
-            throw new ContainerException(e);
-        } catch (NoSuchMethodException e) {
-            throw new ContainerException(e);
-        } catch (InvocationTargetException e) {
-            throw new ContainerException(e);
-        } catch (IllegalAccessException e) {
-            throw new ContainerException(e);
+            // The client went away, or the server is stopping
+            if (running.get() && !socket.isClosed()) {
+                throw new ContainerException(e);
+            }
+        } finally {
+            end();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package midcontainers.components;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SomeCalculator implements Calculator {
+
+    @Override
+    public long add(long a, int b) {
+        return a + b;
+    }
+
+    @Override
+    public double scale(double value, float factor) {
+        return value * factor;
+    }
+
+    @Override
+    public char next(char c) {
+        return (char) (c + 1);
+    }
+
+    @Override
+    public boolean negate(boolean b) {
+        return !b;
+    }
+
+    @Override
+    public int divide(int a, int b) {
+        return a / b;
+    }
+
+    @Override
+    public List<String> repeat(String s, int times) {
+        List<String> result = new ArrayList<String>();
+        for (int i = 0; i < times; i++) {
+            result.add(s);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package midcontainers.components;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SomeCatalog implements Catalog {
+
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    @Override
+    public String lookup(String key) {
+        lookups.incrementAndGet();
+        return key.toUpperCase();
+    }
+
+    @Override
+    public int revision() {
+        return lookups.incrementAndGet();
+    }
+
+    @Override
+    public List<String> keys() {
+        return new ArrayList<String>(Arrays.asList("a", "b"));
+    }
+
+    @Override
+    public int lookups() {
+        return lookups.get();
+    }
+}
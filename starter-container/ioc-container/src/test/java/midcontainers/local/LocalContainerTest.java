@@ -20,19 +20,46 @@ package midcontainers.local;
 import midcontainers.Binding;
 import midcontainers.Container;
 import midcontainers.ContainerException;
+import midcontainers.Provider;
+import midcontainers.components.Counter;
+import midcontainers.components.CountingEcho;
 import midcontainers.components.Echo;
 import midcontainers.components.EchoClient;
+import midcontainers.components.EchoCounterClient;
+import midcontainers.components.LazyEchoCounterClient;
+import midcontainers.components.LoopbackEcho;
+import midcontainers.components.PrefixingEcho;
+import midcontainers.components.ProvidingEchoClient;
+import midcontainers.components.SlowCounter;
+import midcontainers.components.SomeCounter;
 import midcontainers.components.SomeEcho;
 import midcontainers.components.SomeEchoClient;
+import midcontainers.components.SomeEchoCounterClient;
 import org.junit.Test;
 
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static midcontainers.Binding.Policy.NEW;
+import static midcontainers.Binding.Policy.POOLED;
 import static midcontainers.Binding.Policy.SINGLETON;
+import static midcontainers.Binding.Policy.THREAD;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
@@ -99,6 +126,332 @@ public class LocalContainerTest {
             assertThat(client.run(), is("[ hello ]"));
         }
 
+    @Test
+    public void check_generated_injectors() {
+        assertThat(FactoryEngine.generatedInjectorFor(SomeEchoClient.class), notNullValue());
+        assertThat(FactoryEngine.generatedInjectorFor(LinkedList.class), nullValue());
+        // Constructor metadata is shared by all containers
+        assertThat(new FactoryEngine().candidatesFor(SomeEchoClient.class), sameInstance(new FactoryEngine().candidatesFor(SomeEchoClient.class)));
+        assertThat(new FactoryEngine().candidatesFor(LinkedList.class), sameInstance(new FactoryEngine().candidatesFor(LinkedList.class)));
+
+        Container container = new LocalContainer();
+        container
+                .declare(new Binding(Echo.class, SomeEcho.class, null, SINGLETON))
+                .declare(new Binding(EchoClient.class, SomeEchoClient.class, null, NEW))
+                .declare(new Binding(List.class, LinkedList.class, null, NEW))
+                .define("prefix", "[ ")
+                .define("suffix", " ]")
+                .define("message", "hello");
+
+        assertThat(container.obtainReference(EchoClient.class).run(), is("[ hello ]"));
+        assertThat(container.obtainReference(List.class), notNullValue());
+    }
+
+    @Test
+    public void check_constructor_order() {
+        assertThat(FactoryEngine.generatedInjectorFor(PrefixingEcho.class), notNullValue());
+        assertThat(FactoryEngine.generatedInjectorFor(CountingEcho.class), nullValue());
+
+        // Both constructors can be satisfied: the one taking more parameters wins, however found
+        Container container = new LocalContainer();
+        container
+                .declare(new Binding(Echo.class, PrefixingEcho.class, "prefixing", NEW))
+                .declare(new Binding(Echo.class, CountingEcho.class, "counting", NEW))
+                .declare(new Binding(Counter.class, SomeCounter.class, null, SINGLETON))
+                .define("prefix", "> ");
+        assertThat(container.obtainReference(Echo.class, "prefixing").echo("hi"), is("> hi"));
+        assertThat(container.obtainReference(Echo.class, "counting").echo("hi"), is("hi1"));
+
+        container.freeze();
+        assertThat(container.obtainReference(Echo.class, "prefixing").echo("hi"), is("> hi"));
+        assertThat(container.obtainReference(Echo.class, "counting").echo("hi"), is("hi2"));
+    }
+
+    @Test
+    public void check_try_operations() {
+        Container container = new LocalContainer();
+        container
+                .declare(new Binding(Echo.class, SomeEcho.class, null, NEW))
+                .declare(new Binding(EchoClient.class, SomeEchoClient.class, null, NEW))
+                .define("prefix", "[ ");
+
+        assertThat((String) container.tryDefinitionValue("prefix"), is("[ "));
+        assertThat(container.tryDefinitionValue("suffix"), nullValue());
+        assertThat(container.tryDefinitionValue(null), nullValue());
+        assertThat(container.tryObtainReference(List.class, null), nullValue());
+        assertThat(container.tryObtainReference(Echo.class, null), nullValue());
+
+        container.define("suffix", " ]");
+        assertThat(container.tryObtainReference(Echo.class, null), notNullValue());
+        assertThat(container.tryObtainReference(EchoClient.class, null), nullValue());
+        try {
+            container.obtainReference(EchoClient.class);
+            fail("The message value is missing");
+        } catch (ContainerException ignored) {
+        }
+
+        container.define("message", "hello");
+        assertThat(container.tryObtainReference(EchoClient.class, null).run(), is("[ hello ]"));
+    }
+
+    @Test
+    public void check_concurrent_singleton_creation() throws Exception {
+        final Container container = new LocalContainer();
+        container.declare(new Binding(Counter.class, SlowCounter.class, null, SINGLETON));
+        SlowCounter.INSTANCES.set(0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Counter>> futures = new LinkedList<Future<Counter>>();
+        for (int i = 0; i < 32; i++) {
+            futures.add(executor.submit(new Callable<Counter>() {
+                public Counter call() {
+                    return container.obtainReference(Counter.class);
+                }
+            }));
+        }
+        Counter first = futures.get(0).get();
+        for (Future<Counter> future : futures) {
+            assertThat(future.get(), sameInstance(first));
+        }
+        executor.shutdown();
+
+        assertThat(SlowCounter.INSTANCES.get(), is(1));
+    }
+
+    @Test
+    public void check_lazy_injection() throws Exception {
+        Container container = new LocalContainer();
+        container
+                .declare(new Binding(Echo.class, SomeEcho.class, null, NEW))
+                .declare(new Binding(EchoCounterClient.class, LazyEchoCounterClient.class, null, NEW))
+                .declare(new Binding(Counter.class, SlowCounter.class, "shared", SINGLETON))
+                .define("prefix", "[ ")
+                .define("suffix", " ]");
+
+        int instances = SlowCounter.INSTANCES.get();
+        EchoCounterClient client = container.obtainReference(EchoCounterClient.class);
+        EchoCounterClient otherClient = container.obtainReference(EchoCounterClient.class);
+        assertThat(SlowCounter.INSTANCES.get(), is(instances));
+        assertThat(client.echoNextIncrement(), is("[ 1 ]"));
+        assertThat(otherClient.echoNextIncrement(), is("[ 2 ]"));
+        assertThat(SlowCounter.INSTANCES.get(), is(instances + 1));
+
+        Container frozen = new LocalContainer();
+        frozen
+                .declare(new Binding(Echo.class, SomeEcho.class, null, NEW))
+                .declare(new Binding(EchoCounterClient.class, LazyEchoCounterClient.class, null, NEW))
+                .declare(new Binding(Counter.class, SlowCounter.class, "shared", SINGLETON))
+                .define("prefix", "[ ")
+                .define("suffix", " ]")
+                .freeze();
+
+        instances = SlowCounter.INSTANCES.get();
+        client = frozen.obtainReference(EchoCounterClient.class);
+        assertThat(SlowCounter.INSTANCES.get(), is(instances));
+        assertThat(client.echoNextIncrement(), is("[ 1 ]"));
+        assertThat(SlowCounter.INSTANCES.get(), is(instances + 1));
+
+        Container unbound = new LocalContainer();
+        unbound
+                .declare(new Binding(Echo.class, SomeEcho.class, null, NEW))
+                .declare(new Binding(EchoCounterClient.class, LazyEchoCounterClient.class, null, NEW))
+                .define("prefix", "[ ")
+                .define("suffix", " ]");
+        assertThat(unbound.tryObtainReference(EchoCounterClient.class, null), nullValue());
+    }
+
+    @Test
+    public void check_warm_up() {
+        Container container = new LocalContainer();
+        container
+                .declare(new Binding(Echo.class, SomeEcho.class, null, NEW))
+                .declare(new Binding(EchoCounterClient.class, SomeEchoCounterClient.class, null, SINGLETON))
+                .declare(new Binding(Counter.class, SlowCounter.class, "shared", SINGLETON))
+                .declare(new Binding(Counter.class, SlowCounter.class, "other", SINGLETON))
+                .declare(new Binding(Counter.class, SlowCounter.class, "another", SINGLETON))
+                .declare(new Binding(List.class, LinkedList.class, null, NEW))
+                .define("prefix", "[ ")
+                .define("suffix", " ]");
+
+        int instances = SlowCounter.INSTANCES.get();
+        WarmUpReport report = ((LocalContainer) container).warmUp(new ForkJoinPool(4));
+        assertThat(SlowCounter.INSTANCES.get(), is(instances + 3));
+        assertThat(report.getConstructionTimes().keySet(), is((Set<Binding.Key>) new HashSet<Binding.Key>(Arrays.asList(
+                new Binding.Key(EchoCounterClient.class, null),
+                new Binding.Key(Counter.class, "shared"),
+                new Binding.Key(Counter.class, "other"),
+                new Binding.Key(Counter.class, "another")))));
+        for (Long time : report.getConstructionTimes().values()) {
+            assertThat(time > 0L, is(true));
+        }
+        assertThat(report.getElapsedTime() > 0L, is(true));
+
+        Counter shared = container.obtainReference(Counter.class, "shared");
+        assertThat(container.obtainReference(EchoCounterClient.class).echoNextIncrement(), is("[ 1 ]"));
+        assertThat(shared.get(), is(1));
+        assertThat(SlowCounter.INSTANCES.get(), is(instances + 3));
+
+        report = ((LocalContainer) container).warmUp();
+        assertThat(report.getConstructionTimes().isEmpty(), is(true));
+    }
+
+    @Test
+    public void check_pooled_policy() {
+        LocalContainer container = new LocalContainer();
+        container.declare(new Binding(Counter.class, SomeCounter.class, null, POOLED, 2));
+
+        Counter first = container.obtainReference(Counter.class);
+        Counter second = container.obtainReference(Counter.class);
+        assertThat(first, not(sameInstance(second)));
+        container.release(Counter.class, null, first);
+        assertThat(container.obtainReference(Counter.class), sameInstance(first));
+
+        PoolStatistics statistics = container.poolStatistics(Counter.class, null);
+        assertThat(statistics.getCapacity(), is(2));
+        assertThat(statistics.getCreated(), is(2L));
+        assertThat(statistics.getReused(), is(1L));
+        assertThat(statistics.getInUse(), is(2L));
+        assertThat(statistics.getIdle(), is(0));
+
+        Counter third = container.obtainReference(Counter.class);
+        container.release(Counter.class, null, first);
+        container.release(Counter.class, null, second);
+        container.release(Counter.class, null, third);
+        statistics = container.poolStatistics(Counter.class, null);
+        assertThat(statistics.getIdle(), is(2));
+        assertThat(statistics.getInUse(), is(0L));
+        assertThat(statistics.getDiscarded(), is(1L));
+        assertThat(container.poolStatistics(Echo.class, null), nullValue());
+
+        container.freeze();
+        Counter pooled = container.obtainReference(Counter.class);
+        assertThat(pooled == first || pooled == second || pooled == third, is(true));
+        assertThat(container.poolStatistics(Counter.class, null).getReused(), is(2L));
+    }
+
+    @Test
+    public void check_thread_policy() throws Exception {
+        final Container container = new LocalContainer();
+        container.declare(new Binding(Counter.class, SomeCounter.class, null, THREAD));
+
+        Counter counter = container.obtainReference(Counter.class);
+        assertThat(container.obtainReference(Counter.class), sameInstance(counter));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Counter other = executor.submit(new Callable<Counter>() {
+            public Counter call() {
+                return container.obtainReference(Counter.class);
+            }
+        }).get();
+        executor.shutdown();
+        assertThat(other, not(sameInstance(counter)));
+
+        container.release(Counter.class, null, counter);
+        assertThat(container.obtainReference(Counter.class), not(sameInstance(counter)));
+    }
+
+    @Test
+    public void check_provider_injection() {
+        Container container = new LocalContainer();
+        container
+                .declare(new Binding(Echo.class, SomeEcho.class, null, NEW))
+                .declare(new Binding(EchoClient.class, ProvidingEchoClient.class, null, SINGLETON))
+                .define("prefix", "[ ")
+                .define("suffix", " ]")
+                .define("message", "hello");
+
+        ProvidingEchoClient client = (ProvidingEchoClient) container.obtainReference(EchoClient.class);
+        assertThat(client.run(), is("[ hello ]"));
+        Provider<Echo> echoes = client.getEchoes();
+        assertThat(echoes.get(), not(sameInstance(echoes.get())));
+
+        container.declare(new Binding(Echo.class, SomeEcho.class, null, SINGLETON));
+        assertThat(echoes.get(), sameInstance(echoes.get()));
+
+        container.freeze();
+        assertThat(echoes.get(), sameInstance(container.obtainReference(Echo.class)));
+
+        Container delegate = new LocalContainer();
+        delegate
+                .declare(new Binding(Echo.class, SomeEcho.class, null, NEW))
+                .define("prefix", "< ")
+                .define("suffix", " >");
+        Container main = new LocalContainer();
+        main
+                .declare(new Binding(EchoClient.class, ProvidingEchoClient.class, null, NEW))
+                .define("message", "hello")
+                .delegateTo(delegate);
+        assertThat(main.obtainReference(EchoClient.class).run(), is("< hello >"));
+        main.freeze();
+        assertThat(main.obtainReference(EchoClient.class).run(), is("< hello >"));
+
+        Container unbound = new LocalContainer();
+        unbound
+                .declare(new Binding(EchoClient.class, ProvidingEchoClient.class, null, NEW))
+                .define("message", "hello");
+        assertThat(unbound.tryObtainReference(EchoClient.class, null), nullValue());
+    }
+
+    @Test
+    public void check_metrics() throws Exception {
+        LocalContainer delegate = new LocalContainer();
+        delegate.declare(new Binding(Counter.class, SomeCounter.class, "shared", SINGLETON));
+        LocalContainer container = new LocalContainer();
+        container
+                .declare(new Binding(Echo.class, SomeEcho.class, null, NEW))
+                .declare(new Binding(EchoCounterClient.class, SomeEchoCounterClient.class, null, NEW))
+                .define("prefix", "[ ")
+                .define("suffix", " ]")
+                .delegateTo(delegate);
+
+        container.obtainReference(Echo.class);
+        assertThat(container.metrics().isEmpty(), is(true));
+
+        container.enableMetrics();
+        delegate.enableMetrics();
+        for (int i = 0; i < 3; i++) {
+            container.obtainReference(EchoCounterClient.class);
+        }
+
+        BindingMetrics echo = container.metrics().get(new Binding.Key(Echo.class, null));
+        assertThat(echo.getResolutions(), is(3L));
+        assertThat(echo.getConstructions(), is(3L));
+        assertThat(echo.getSingletonHits(), is(0L));
+        assertThat(echo.getTotalConstructionTime() > 0L, is(true));
+        assertThat(echo.constructionTimeQuantile(0.5) > 0L, is(true));
+
+        BindingMetrics hops = container.metrics().get(new Binding.Key(Counter.class, "shared"));
+        assertThat(hops.getDelegateHops(), is(3L));
+        assertThat(hops.getConstructions(), is(0L));
+
+        BindingMetrics counter = delegate.metrics().get(new Binding.Key(Counter.class, "shared"));
+        assertThat(counter.getResolutions(), is(3L));
+        assertThat(counter.getConstructions(), is(1L));
+        assertThat(counter.getSingletonHits(), is(2L));
+
+        container.freeze();
+        container.resetMetrics();
+        container.obtainReference(Echo.class);
+        assertThat(container.metrics().get(new Binding.Key(Echo.class, null)).getConstructions(), is(1L));
+
+        container.disableMetrics();
+        container.obtainReference(Echo.class);
+        assertThat(container.metrics().isEmpty(), is(true));
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = container.registerMetricsMBean("check_metrics");
+        try {
+            server.setAttribute(name, new Attribute("Enabled", true));
+            container.obtainReference(Echo.class);
+            CompositeData[] bindings = (CompositeData[]) server.getAttribute(name, "Bindings");
+            assertThat(bindings.length, is(1));
+            assertThat((String) bindings[0].get("interfaceName"), is(Echo.class.getName()));
+            assertThat((Long) bindings[0].get("constructions"), is(1L));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
     // Appears with delegation support .............................................................................. //
 
     @Test
@@ -131,4 +484,224 @@ public class LocalContainerTest {
             EchoClient client = mainContainer.obtainReference(EchoClient.class);
             assertThat(client.run(), is("[ hello ]"));
         }
+
+    @Test
+    public void check_delegation_resolution_cache() {
+        final int[] checks = new int[1];
+        LocalContainer delegate = new LocalContainer() {
+            @Override
+            public boolean hasReferenceDeclaredFor(Class<?> interfaceClass, String qualifier) {
+                checks[0] = checks[0] + 1;
+                return super.hasReferenceDeclaredFor(interfaceClass, qualifier);
+            }
+        };
+        delegate
+                .declare(new Binding(Echo.class, SomeEcho.class, null, NEW))
+                .define("prefix", "[ ")
+                .define("suffix", " ]");
+
+        LocalContainer mainContainer = new LocalContainer();
+        mainContainer.delegateTo(new LocalContainer()).delegateTo(delegate);
+
+        mainContainer.obtainReference(Echo.class);
+        mainContainer.obtainReference(Echo.class);
+        assertThat(checks[0], is(1));
+
+        try {
+            mainContainer.obtainReference(List.class);
+            fail("No container has a binding for List.class");
+        } catch (ContainerException ignored) {
+        }
+        delegate.declare(new Binding(List.class, LinkedList.class, null, NEW));
+        try {
+            mainContainer.obtainReference(List.class);
+            fail("The failed lookup should have been remembered");
+        } catch (ContainerException ignored) {
+        }
+        mainContainer.invalidateResolutionCache();
+        assertThat(mainContainer.obtainReference(List.class), notNullValue());
+
+        assertThat((String) mainContainer.definitionValue("prefix"), is("[ "));
+        try {
+            mainContainer.definitionValue("n/a");
+            fail("No container defines n/a");
+        } catch (ContainerException ignored) {
+        }
+    }
+
+    @Test
+    public void check_concurrent_delegation() throws InterruptedException {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        final CountDownLatch patientGate = new CountDownLatch(1);
+        CountDownLatch impatientGate = new CountDownLatch(1);
+        try {
+            Container fast = new LocalContainer()
+                    .declare(new Binding(Echo.class, SomeEcho.class, null, NEW))
+                    .define("prefix", "[ ")
+                    .define("suffix", " ]")
+                    .define("extra", "fast");
+
+            // The slow delegate comes first and answers in time: it wins
+            LocalContainer patient = new LocalContainer();
+            patient
+                    .delegateConcurrently(executor, 5L, TimeUnit.SECONDS)
+                    .delegateTo(slowDelegate(patientGate))
+                    .delegateTo(fast);
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        Thread.sleep(50L);
+                    } catch (InterruptedException ignored) {
+                    }
+                    patientGate.countDown();
+                }
+            });
+            assertThat(patient.obtainReference(Echo.class).echo("hi"), is("< hi >"));
+            assertThat((String) patient.definitionValue("extra"), is("fast"));
+
+            // The slow delegate is late: the next one answers before it is released, and is not remembered as the owner
+            LocalContainer impatient = new LocalContainer();
+            impatient
+                    .delegateConcurrently(executor, 50L, TimeUnit.MILLISECONDS)
+                    .delegateTo(slowDelegate(impatientGate))
+                    .delegateTo(fast);
+            assertThat(impatient.obtainReference(Echo.class).echo("hi"), is("[ hi ]"));
+            assertThat((String) impatient.definitionValue("prefix"), is("[ "));
+            assertThat(impatientGate.getCount(), is(1L));
+
+            impatientGate.countDown();
+            impatient.delegateSequentially();
+            assertThat(impatient.obtainReference(Echo.class).echo("hi"), is("< hi >"));
+        } finally {
+            patientGate.countDown();
+            impatientGate.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private static Container slowDelegate(CountDownLatch gate) {
+        return new GatedContainer(gate)
+                .declare(new Binding(Echo.class, SomeEcho.class, null, NEW))
+                .define("prefix", "< ")
+                .define("suffix", " >");
+    }
+
+    // A container that only tells what it has once its gate is open
+    private static final class GatedContainer extends LocalContainer {
+        private final CountDownLatch gate;
+
+        GatedContainer(CountDownLatch gate) {
+            this.gate = gate;
+        }
+
+        @Override
+        public boolean hasReferenceDeclaredFor(Class<?> interfaceClass, String qualifier) {
+            pause();
+            return super.hasReferenceDeclaredFor(interfaceClass, qualifier);
+        }
+
+        @Override
+        public Object tryDefinitionValue(String name) {
+            pause();
+            return super.tryDefinitionValue(name);
+        }
+
+        private void pause() {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Appears with frozen containers ............................................................................... //
+
+    @Test
+    public void check_freeze() {
+        Container container = new LocalContainer();
+        container
+                .declare(new Binding(Echo.class, SomeEcho.class, null, SINGLETON))
+                .declare(new Binding(EchoClient.class, SomeEchoClient.class, null, NEW))
+                .define("prefix", "[ ")
+                .define("suffix", " ]")
+                .define("message", "hello")
+                .freeze();
+
+        EchoClient client1 = container.obtainReference(EchoClient.class);
+        EchoClient client2 = container.obtainReference(EchoClient.class);
+        assertThat(client1.run(), is("[ hello ]"));
+        assertThat(client1, not(sameInstance(client2)));
+        assertThat(container.obtainReference(Echo.class), sameInstance(container.obtainReference(Echo.class)));
+        assertThat(container.hasReferenceDeclaredFor(Echo.class), is(true));
+        assertThat(container.hasReferenceDeclaredFor(Echo.class, "n/a"), is(false));
+
+        try {
+            container.declare(new Binding(List.class, LinkedList.class, null, NEW));
+            fail("A frozen container should not accept new bindings");
+        } catch (ContainerException ignored) {
+        }
+        try {
+            container.define("foo", "bar");
+            fail("A frozen container should not accept new values");
+        } catch (ContainerException ignored) {
+        }
+        try {
+            container.obtainReference(List.class);
+            fail("A ContainerException should have been thrown because there is no binding for List.class");
+        } catch (ContainerException ignored) {
+        }
+    }
+
+    @Test
+    public void check_freeze_with_delegation() {
+        Container delegate = new LocalContainer();
+        delegate
+                .declare(new Binding(Echo.class, SomeEcho.class, null, NEW))
+                .define("prefix", "[ ")
+                .define("suffix", " ]");
+
+        Container mainContainer = new LocalContainer();
+        mainContainer
+                .declare(new Binding(EchoClient.class, SomeEchoClient.class, null, NEW))
+                .define("message", "hello")
+                .delegateTo(delegate)
+                .freeze();
+
+        assertThat(mainContainer.obtainReference(EchoClient.class).run(), is("[ hello ]"));
+    }
+
+    @Test
+    public void check_freeze_validation() {
+        Container missingValue = new LocalContainer();
+        missingValue
+                .declare(new Binding(Echo.class, SomeEcho.class, null, NEW))
+                .define("prefix", "[ ");
+        try {
+            missingValue.freeze();
+            fail("The suffix value is missing");
+        } catch (ContainerException ignored) {
+        }
+
+        Container missingBinding = new LocalContainer();
+        missingBinding
+                .declare(new Binding(EchoClient.class, SomeEchoClient.class, null, NEW))
+                .define("message", "hello");
+        try {
+            missingBinding.freeze();
+            fail("There is no binding for Echo.class");
+        } catch (ContainerException ignored) {
+        }
+
+        Container cycle = new LocalContainer();
+        cycle
+                .declare(new Binding(Echo.class, LoopbackEcho.class, null, NEW))
+                .declare(new Binding(EchoClient.class, SomeEchoClient.class, null, NEW))
+                .define("message", "hello");
+        try {
+            cycle.freeze();
+            fail("EchoClient and Echo depend on each other");
+        } catch (ContainerException ignored) {
+        }
+    }
 }
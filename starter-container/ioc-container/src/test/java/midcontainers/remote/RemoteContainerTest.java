@@ -1,13 +1,34 @@
 package midcontainers.remote;
 
 import midcontainers.Binding;
+import midcontainers.ContainerException;
 import midcontainers.components.*;
 import midcontainers.local.LocalContainer;
+import midcontainers.executors.ConnectionExecutors;
+import org.junit.Assume;
 import org.junit.Test;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
 
 import static midcontainers.Binding.Policy.NEW;
 import static midcontainers.Binding.Policy.SINGLETON;
@@ -72,6 +93,9 @@ public class RemoteContainerTest {
         assertThat(query, is(false));
 
         assertThat((String) client.definitionValue("hello"), is("world"));
+        assertThat(client.tryDefinitionValue("foo"), nullValue());
+        assertThat(client.tryObtainReference(Set.class, null), nullValue());
+        assertThat(client.tryObtainReference(List.class, null), notNullValue());
 
         server.stop();
     }
@@ -122,6 +146,37 @@ public class RemoteContainerTest {
         server.stop();
     }
 
+    @Test
+    public void check_wire_values() {
+        RemoteContainerServer server = new RemoteContainerServer(1986);
+        server.declare(new Binding(Calculator.class, SomeCalculator.class, null, SINGLETON));
+        server.start();
+
+        RemoteContainerClient client = new RemoteContainerClient("127.0.0.1", 1986);
+        Calculator calculator = client.obtainReference(Calculator.class);
+        for (int i = 0; i < 3; i++) {
+            assertThat(calculator.add(Long.MAX_VALUE - 10L, 10), is(Long.MAX_VALUE));
+            assertThat(calculator.scale(1.5, 2.0f), is(3.0));
+            assertThat(calculator.next('a'), is('b'));
+            assertThat(calculator.negate(false), is(true));
+            assertThat(calculator.repeat("\u00e9t\u00e9", 2), is(Arrays.asList("\u00e9t\u00e9", "\u00e9t\u00e9")));
+        }
+        assertThat(calculator.repeat(null, 1).get(0), nullValue());
+
+        try {
+            calculator.divide(1, 0);
+            fail("The remote ArithmeticException should be thrown");
+        } catch (ArithmeticException ignored) {
+        }
+        assertThat(calculator.divide(6, 3), is(2));
+
+        // Object methods are not in method tables, and go by name
+        assertThat(calculator.toString().startsWith(SomeCalculator.class.getName()), is(true));
+        assertThat(client.obtainReference(Calculator.class).add(1L, 1), is(2L));
+
+        server.stop();
+    }
+
     @Test
     public void check_delegation_to_remote() {
         RemoteContainerServer server = new RemoteContainerServer(1985);
@@ -145,4 +200,504 @@ public class RemoteContainerTest {
 
         server.stop();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void check_release_through_remote_delegate() {
+        RemoteContainerServer server = new RemoteContainerServer(1997);
+        server.declare(new Binding(Counter.class, SomeCounter.class, null, SINGLETON));
+        server.start();
+
+        RemoteContainerClient remote = new RemoteContainerClient("127.0.0.1", 1997);
+        LocalContainer mainContainer = new LocalContainer();
+        mainContainer.delegateTo(remote);
+
+        Counter counter = mainContainer.obtainReference(Counter.class);
+        assertThat(counter.increment(), is(1));
+        mainContainer.release(Counter.class, null, counter);
+        assertThat(counter.increment(), is(2));
+
+        try {
+            remote.release(Counter.class, null, new SomeCounter());
+            fail("The reference does not come from the remote container");
+        } catch (ContainerException ignored) {
+        }
+
+        remote.close();
+        server.stop();
+    }
+
+    @Test
+    public void check_concurrent_calls() throws InterruptedException {
+        RemoteContainerServer server = new RemoteContainerServer(1987);
+        server
+                .declare(new Binding(Calculator.class, SomeCalculator.class, null, SINGLETON))
+                .declare(new Binding(Counter.class, SomeCounter.class, null, SINGLETON));
+        server.start();
+
+        RemoteContainerClient client = new RemoteContainerClient("127.0.0.1", 1987);
+        final Calculator calculator = client.obtainReference(Calculator.class);
+        final Counter counter = client.obtainReference(Counter.class);
+        final AtomicInteger mismatches = new AtomicInteger();
+        Thread[] threads = new Thread[16];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t * 1000;
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 100; i++) {
+                        if (calculator.add(offset, i) != offset + i) {
+                            mismatches.incrementAndGet();
+                        }
+                        counter.increment();
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Every caller got its own reply, and no call was lost
+        assertThat(mismatches.get(), is(0));
+        assertThat(counter.increment(), is(1601));
+
+        client.close();
+        try {
+            calculator.add(1L, 1);
+            fail("A closed client should not send calls");
+        } catch (ContainerException ignored) {
+        }
+
+        server.stop();
+    }
+
+    @Test
+    public void check_async_calls() throws Exception {
+        RemoteContainerServer server = new RemoteContainerServer(1988);
+        server.declare(new Binding(Calculator.class, SomeCalculator.class, null, SINGLETON));
+        server.start();
+
+        RemoteContainerClient client = new RemoteContainerClient("127.0.0.1", 1988);
+        AsyncCalculator calculator = client.obtainAsyncReference(Calculator.class, AsyncCalculator.class);
+        final Calculator blocking = client.obtainReference(Calculator.class);
+
+        // One thread has every call in flight at once
+        List<CompletableFuture<Long>> sums = new ArrayList<CompletableFuture<Long>>();
+        for (int i = 0; i < 100; i++) {
+            sums.add(calculator.add(i, i));
+        }
+        CompletableFuture.allOf(sums.toArray(new CompletableFuture<?>[sums.size()])).get(10, TimeUnit.SECONDS);
+        for (int i = 0; i < 100; i++) {
+            assertThat(sums.get(i).get(), is(2L * i));
+        }
+
+        // Callbacks may make blocking calls on the same client
+        CompletableFuture<Long> chained = calculator.add(1L, 1).thenApply(new Function<Long, Long>() {
+            public Long apply(Long sum) {
+                return blocking.add(sum, 1);
+            }
+        });
+        assertThat(chained.get(10, TimeUnit.SECONDS), is(3L));
+
+        try {
+            calculator.divide(1, 0).toCompletableFuture().get(10, TimeUnit.SECONDS);
+            fail("The remote ArithmeticException should fail the future");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(ArithmeticException.class));
+        }
+        assertThat(calculator.divide(6, 3).toCompletableFuture().get(10, TimeUnit.SECONDS), is(2));
+
+        try {
+            client.obtainAsyncReference(Counter.class, AsyncCalculator.class);
+            fail("The interfaces do not match");
+        } catch (ContainerException ignored) {
+        }
+
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    public void check_virtual_thread_connections() throws Exception {
+        Assume.assumeTrue(ConnectionExecutors.isVirtualThreadAvailable());
+
+        final Method isVirtual = Thread.class.getMethod("isVirtual");
+        final Set<Boolean> virtual = Collections.synchronizedSet(new HashSet<Boolean>());
+        final Executor threads = ConnectionExecutors.virtualThreadPerConnection();
+        RemoteContainerServer server = new RemoteContainerServer(1996);
+        server
+                .useConnectionExecutor(new Executor() {
+                    public void execute(final Runnable command) {
+                        threads.execute(new Runnable() {
+                            public void run() {
+                                try {
+                                    virtual.add((Boolean) isVirtual.invoke(Thread.currentThread()));
+                                } catch (Exception e) {
+                                    virtual.add(false);
+                                }
+                                command.run();
+                            }
+                        });
+                    }
+                })
+                .declare(new Binding(Calculator.class, SomeCalculator.class, null, SINGLETON));
+        server.start();
+
+        List<RemoteContainerClient> clients = new ArrayList<RemoteContainerClient>();
+        for (int i = 0; i < 50; i++) {
+            RemoteContainerClient client = new RemoteContainerClient("127.0.0.1", 1996);
+            clients.add(client);
+            assertThat(client.obtainReference(Calculator.class).add(i, 1), is((long) (i + 1)));
+        }
+        assertThat(virtual, is(new HashSet<Boolean>(Arrays.asList(true))));
+
+        for (RemoteContainerClient client : clients) {
+            client.close();
+        }
+        server.stop();
+    }
+
+    @Test
+    public void check_selector_mode() throws InterruptedException {
+        RemoteContainerServer server = new RemoteContainerServer(1989);
+        server
+                .useSelectors(2, 4, 1000)
+                .declare(new Binding(Calculator.class, SomeCalculator.class, null, SINGLETON))
+                .declare(new Binding(Echo.class, SomeEcho.class, null, SINGLETON))
+                .define("hello", "world")
+                .define("prefix", "<")
+                .define("suffix", ">");
+        server.start();
+
+        List<RemoteContainerClient> clients = new ArrayList<RemoteContainerClient>();
+        for (int i = 0; i < 50; i++) {
+            RemoteContainerClient client = new RemoteContainerClient("127.0.0.1", 1989);
+            clients.add(client);
+            assertThat((String) client.definitionValue("hello"), is("world"));
+            assertThat(client.obtainReference(Calculator.class).add(i, i), is(2L * i));
+        }
+        for (RemoteContainerClient client : clients) {
+            assertThat(client.obtainReference(Calculator.class).next('a'), is('b'));
+            client.close();
+        }
+
+        // Frames much larger than the retained buffer grow as they arrive
+        char[] large = new char[300 * 1024];
+        Arrays.fill(large, 'x');
+        RemoteContainerClient echoing = new RemoteContainerClient("127.0.0.1", 1989);
+        assertThat(echoing.obtainReference(Echo.class).echo(new String(large)), is("<" + new String(large) + ">"));
+        echoing.close();
+
+        // Pipelined calls of one client run concurrently, and each reply finds its caller
+        final Calculator calculator = new RemoteContainerClient("127.0.0.1", 1989).obtainReference(Calculator.class);
+        final AtomicInteger mismatches = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t * 1000;
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 100; i++) {
+                        if (calculator.add(offset, i) != offset + i) {
+                            mismatches.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(mismatches.get(), is(0));
+
+        try {
+            calculator.divide(1, 0);
+            fail("The remote ArithmeticException should be thrown");
+        } catch (ArithmeticException ignored) {
+        }
+
+        server.stop();
+    }
+
+    @Test
+    public void check_selector_mode_rejections() throws Exception {
+        RemoteContainerServer server = new RemoteContainerServer(1990);
+        server
+                .useSelectors(1, 1, 1)
+                .declare(new Binding(Gate.class, SomeGate.class, null, SINGLETON));
+        server.start();
+
+        SomeGate.OPEN = new CountDownLatch(1);
+        SomeGate.ENTERED.drainPermits();
+        RemoteContainerClient client = new RemoteContainerClient("127.0.0.1", 1990);
+        try {
+            AsyncGate gate = client.obtainAsyncReference(Gate.class, AsyncGate.class);
+
+            // One request holds the only invocation thread, the next one takes the only queue slot...
+            CompletableFuture<Integer> running = gate.pass();
+            assertThat(SomeGate.ENTERED.tryAcquire(10, TimeUnit.SECONDS), is(true));
+            CompletableFuture<Integer> queued = gate.pass();
+
+            // ... so the one after is turned away instead of piling up
+            try {
+                gate.pass().get(10, TimeUnit.SECONDS);
+                fail("The server should be too busy");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause(), instanceOf(ContainerException.class));
+            }
+            assertThat(queued.isDone(), is(false));
+
+            SomeGate.OPEN.countDown();
+            assertThat(running.get(10, TimeUnit.SECONDS), is(1));
+            assertThat(queued.get(10, TimeUnit.SECONDS), is(2));
+            assertThat(client.obtainReference(Gate.class).pass(), is(3));
+        } finally {
+            SomeGate.OPEN.countDown();
+            client.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void check_selector_mode_ordering() throws IOException {
+        RemoteContainerServer server = new RemoteContainerServer(1998);
+        server
+                .useSelectors(1, 4, 1000)
+                .declare(new Binding(Journal.class, SomeJournal.class, null, SINGLETON));
+        server.start();
+
+        // A read sent right after a one-way call sees its effect
+        RemoteContainerClient client = new RemoteContainerClient("127.0.0.1", 1998);
+        Journal journal = client.obtainReference(Journal.class);
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 200; i++) {
+            journal.record("event " + i);
+            expected.add("event " + i);
+            assertThat(journal.events(), is(expected));
+        }
+        client.close();
+
+        // Clients without correlation ids are turned away, since replies may leave out of order
+        Socket socket = new Socket("127.0.0.1", 1998);
+        try {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(Protocol.MAGIC);
+            out.writeByte(Protocol.CORRELATION_IDS - 1);
+            out.flush();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            assertThat(in.readInt(), is(Protocol.MAGIC));
+            assertThat(in.readUnsignedByte(), is(0));
+        } finally {
+            socket.close();
+        }
+
+        server.stop();
+    }
+
+    @Test
+    public void check_connection_executor() {
+        final AtomicInteger connections = new AtomicInteger();
+        final Executor threads = ConnectionExecutors.threadPerConnection();
+        RemoteContainerServer server = new RemoteContainerServer(1991);
+        server
+                .useConnectionExecutor(new Executor() {
+                    public void execute(Runnable command) {
+                        connections.incrementAndGet();
+                        threads.execute(command);
+                    }
+                })
+                .define("hello", "world");
+        server.start();
+
+        for (int i = 0; i < 3; i++) {
+            RemoteContainerClient client = new RemoteContainerClient("127.0.0.1", 1991);
+            assertThat((String) client.definitionValue("hello"), is("world"));
+            client.close();
+        }
+        assertThat(connections.get(), is(3));
+
+        if (ConnectionExecutors.isVirtualThreadAvailable()) {
+            assertThat(ConnectionExecutors.virtualThreadPerConnection(), notNullValue());
+        } else {
+            try {
+                ConnectionExecutors.virtualThreadPerConnection();
+                fail("Virtual threads should not be available");
+            } catch (UnsupportedOperationException ignored) {
+            }
+        }
+
+        server.stop();
+    }
+
+    @Test
+    public void check_batches() {
+        RemoteContainerServer server = new RemoteContainerServer(1992);
+        server
+                .declare(new Binding(Counter.class, SomeCounter.class, null, SINGLETON))
+                .declare(new Binding(Calculator.class, SomeCalculator.class, null, SINGLETON));
+        server.start();
+
+        RemoteContainerClient client = new RemoteContainerClient("127.0.0.1", 1992);
+        Counter counter = client.obtainReference(Counter.class);
+        Calculator calculator = client.obtainReference(Calculator.class);
+
+        RemoteBatch batch = client.batch();
+        Counter recordingCounter = batch.record(counter);
+        Calculator recordingCalculator = batch.record(calculator);
+        assertThat(recordingCounter.increment(), is(0));
+        recordingCounter.increment();
+        recordingCalculator.repeat("a", 2);
+        recordingCounter.get();
+        assertThat(counter.get(), is(0));
+        assertThat(batch.size(), is(4));
+        assertThat(batch.execute(), is(Arrays.<Object>asList(1, 2, Arrays.asList("a", "a"), 2)));
+        assertThat(batch.size(), is(0));
+
+        // The server stops at the first failure
+        recordingCounter.increment();
+        recordingCalculator.divide(1, 0);
+        recordingCounter.increment();
+        try {
+            batch.execute();
+            fail("The remote ArithmeticException should be thrown");
+        } catch (ArithmeticException ignored) {
+        }
+        assertThat(counter.get(), is(3));
+
+        try {
+            batch.record(new SomeCounter());
+            fail("Only remote references can be recorded");
+        } catch (ContainerException ignored) {
+        }
+
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    public void check_one_way_calls() throws InterruptedException {
+        RemoteContainerServer server = new RemoteContainerServer(1993);
+        server.declare(new Binding(Journal.class, SomeJournal.class, null, SINGLETON));
+        server.start();
+
+        RemoteContainerClient client = new RemoteContainerClient("127.0.0.1", 1993);
+        final List<Method> methods = new ArrayList<Method>();
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        final CountDownLatch failed = new CountDownLatch(1);
+        client.setFailureListener(new RemoteFailureListener() {
+            public void failed(Method method, Throwable failure) {
+                methods.add(method);
+                failures.add(failure);
+                failed.countDown();
+            }
+        });
+        Journal journal = client.obtainReference(Journal.class);
+
+        journal.record("started");
+        journal.reject("oops");
+        journal.record("stopped");
+        assertThat(journal.events(), is(Arrays.asList("started", "stopped")));
+
+        assertThat(failed.await(10, TimeUnit.SECONDS), is(true));
+        assertThat(methods.get(0).getName(), is("reject"));
+        assertThat(failures.get(0), instanceOf(ContainerException.class));
+        assertThat(failures.get(0).getCause(), instanceOf(IllegalArgumentException.class));
+        assertThat(failures.get(0).getCause().getMessage(), is("oops"));
+
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    public void check_failing_failure_listener() throws InterruptedException {
+        RemoteContainerServer server = new RemoteContainerServer(1995);
+        server.declare(new Binding(Journal.class, SomeJournal.class, null, SINGLETON));
+        server.start();
+
+        RemoteContainerClient client = new RemoteContainerClient("127.0.0.1", 1995);
+        final List<String> rejected = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch failed = new CountDownLatch(2);
+        client.setFailureListener(new RemoteFailureListener() {
+            public void failed(Method method, Throwable failure) {
+                rejected.add(method.getName() + " " + failure.getCause().getMessage());
+                failed.countDown();
+                throw new IllegalStateException("The listener is broken");
+            }
+        });
+        Journal journal = client.obtainReference(Journal.class);
+
+        journal.reject("first");
+        journal.record("still connected");
+        assertThat(journal.events(), is(Arrays.asList("still connected")));
+        journal.reject("second");
+
+        assertThat(failed.await(10, TimeUnit.SECONDS), is(true));
+        assertThat(rejected.contains("reject first"), is(true));
+        assertThat(rejected.contains("reject second"), is(true));
+        assertThat(journal.events(), is(Arrays.asList("still connected")));
+
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    public void check_result_cache() {
+        RemoteContainerServer server = new RemoteContainerServer(1994);
+        server.declare(new Binding(Catalog.class, SomeCatalog.class, null, SINGLETON));
+        server.start();
+
+        RemoteContainerClient client = new RemoteContainerClient("127.0.0.1", 1994);
+        ResultCache cache = client.resultCache();
+        final AtomicLong now = new AtomicLong();
+        cache.useClock(new LongSupplier() {
+            public long getAsLong() {
+                return now.get();
+            }
+        });
+        Catalog catalog = client.obtainReference(Catalog.class);
+
+        assertThat(catalog.lookup("a"), is("A"));
+        assertThat(catalog.lookup("a"), is("A"));
+        assertThat(catalog.lookup("b"), is("B"));
+        assertThat(catalog.lookups(), is(2));
+        assertThat(cache.hits(), is(1L));
+        assertThat(cache.misses(), is(2L));
+        assertThat(cache.size(), is(2));
+
+        // Entries are dropped on demand
+        cache.invalidate(catalog, "lookup");
+        assertThat(cache.size(), is(0));
+        assertThat(catalog.lookup("a"), is("A"));
+        assertThat(catalog.lookups(), is(3));
+
+        // ... when they expire
+        int revision = catalog.revision();
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(49));
+        assertThat(catalog.revision(), is(revision));
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        assertThat(catalog.revision(), is(revision + 1));
+
+        // ... and when the cache is full
+        cache.invalidateAll();
+        cache.resetMetrics();
+        cache.setCapacity(2);
+        catalog.lookup("a");
+        catalog.lookup("b");
+        catalog.lookup("c");
+        assertThat(cache.size(), is(2));
+        assertThat(cache.evictions(), is(1L));
+        catalog.lookup("c");
+        catalog.lookup("a");
+        assertThat(cache.hits(), is(1L));
+        assertThat(cache.misses(), is(4L));
+
+        // Callers get their own copy of mutable results
+        catalog.keys().add("c");
+        List<String> keys = catalog.keys();
+        assertThat(keys, is(Arrays.asList("a", "b")));
+        assertThat(cache.hits(), is(2L));
+
+        client.close();
+        server.stop();
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2011 Julien Ponge, Institut National des Sciences Appliquées de Lyon
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package midcontainers.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Annotation processor emitting a <code>midcontainers.Injector</code> for every implementation
+ * class that has <code>@Named</code> or <code>@Lazy</code> constructor parameters.
+ * <p/>
+ * The injector describes the public constructors of the class in declaration order and calls
+ * them directly, so that containers do not need reflection to assemble the component. Classes
+ * that containers could not instantiate anyway (abstract classes, inner classes, classes that
+ * are not public) are skipped.
+ *
+ * @see midcontainers.Injector
+ */
+@SupportedAnnotationTypes({InjectorProcessor.NAMED, InjectorProcessor.LAZY})
+public class InjectorProcessor extends AbstractProcessor {
+
+    static final String NAMED = "midcontainers.Named";
+    static final String LAZY = "midcontainers.Lazy";
+    static final String PROVIDER = "midcontainers.Provider";
+    static final String INJECTOR = "midcontainers.Injector";
+    static final String SUFFIX = "$$Injector";
+
+    private final Set<String> generated = new HashSet<String>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> components = new LinkedHashSet<TypeElement>();
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                Element enclosing = element.getEnclosingElement();
+                if (element.getKind() == ElementKind.PARAMETER && enclosing.getKind() == ElementKind.CONSTRUCTOR) {
+                    components.add((TypeElement) enclosing.getEnclosingElement());
+                }
+            }
+        }
+        for (TypeElement component : components) {
+            String binaryName = processingEnv.getElementUtils().getBinaryName(component).toString();
+            if (isInjectable(component) && generated.add(binaryName)) {
+                generate(component, binaryName);
+            }
+        }
+        return false;
+    }
+
+    private boolean isInjectable(TypeElement component) {
+        if (component.getKind() != ElementKind.CLASS || component.getModifiers().contains(Modifier.ABSTRACT)) {
+            return false;
+        }
+        Element element = component;
+        while (element.getKind() != ElementKind.PACKAGE) {
+            if (!element.getModifiers().contains(Modifier.PUBLIC)) {
+                return false;
+            }
+            TypeElement type = (TypeElement) element;
+            if (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+                return false;
+            }
+            if (type.getNestingKind() != NestingKind.TOP_LEVEL && type.getNestingKind() != NestingKind.MEMBER) {
+                return false;
+            }
+            element = element.getEnclosingElement();
+        }
+        return true;
+    }
+
+    private void generate(TypeElement component, String binaryName) {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(component);
+        String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        String simpleName = (packageName.length() == 0 ? binaryName : binaryName.substring(packageName.length() + 1)) + SUFFIX;
+        String componentName = component.getQualifiedName().toString();
+
+        List<ExecutableElement> constructors = new ArrayList<ExecutableElement>();
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(component.getEnclosedElements())) {
+            if (constructor.getModifiers().contains(Modifier.PUBLIC)) {
+                constructors.add(constructor);
+            }
+        }
+
+        try {
+            String sourceName = (packageName.length() == 0) ? simpleName : packageName + "." + simpleName;
+            PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(sourceName, component).openWriter());
+            if (packageName.length() > 0) {
+                out.println("package " + packageName + ";");
+                out.println();
+            }
+            out.println("/**");
+            out.println(" * Injector for <code>" + componentName + "</code>, generated by <code>" + getClass().getName() + "</code>.");
+            out.println(" */");
+            out.println("@SuppressWarnings({\"unchecked\", \"rawtypes\"})");
+            out.println("public final class " + simpleName + " implements " + INJECTOR + " {");
+            out.println();
+            out.println("    private static final Class<?>[][] PARAMETER_TYPES = {");
+            for (ExecutableElement constructor : constructors) {
+                StringBuilder types = new StringBuilder();
+                for (VariableElement parameter : constructor.getParameters()) {
+                    if (types.length() > 0) {
+                        types.append(", ");
+                    }
+                    types.append(erasure(parameter.asType())).append(".class");
+                }
+                out.println("            {" + types + "},");
+            }
+            out.println("    };");
+            out.println();
+            out.println("    private static final String[][] QUALIFIERS = {");
+            for (ExecutableElement constructor : constructors) {
+                StringBuilder qualifiers = new StringBuilder();
+                for (VariableElement parameter : constructor.getParameters()) {
+                    if (qualifiers.length() > 0) {
+                        qualifiers.append(", ");
+                    }
+                    String qualifier = qualifierOf(parameter);
+                    qualifiers.append(qualifier == null ? "null" : processingEnv.getElementUtils().getConstantExpression(qualifier));
+                }
+                out.println("            {" + qualifiers + "},");
+            }
+            out.println("    };");
+            out.println();
+            out.println("    private static final boolean[][] LAZY = {");
+            for (ExecutableElement constructor : constructors) {
+                StringBuilder lazy = new StringBuilder();
+                for (VariableElement parameter : constructor.getParameters()) {
+                    if (lazy.length() > 0) {
+                        lazy.append(", ");
+                    }
+                    lazy.append(annotationOf(parameter, LAZY) != null);
+                }
+                out.println("            {" + lazy + "},");
+            }
+            out.println("    };");
+            out.println();
+            out.println("    public int constructorCount() {");
+            out.println("        return " + constructors.size() + ";");
+            out.println("    }");
+            out.println();
+            out.println("    public Class<?>[] parameterTypes(int constructor) {");
+            out.println("        return PARAMETER_TYPES[constructor];");
+            out.println("    }");
+            out.println();
+            out.println("    public String[] qualifiers(int constructor) {");
+            out.println("        return QUALIFIERS[constructor];");
+            out.println("    }");
+            out.println();
+            out.println("    private static final Class<?>[][] PROVIDED_TYPES = {");
+            for (ExecutableElement constructor : constructors) {
+                StringBuilder provided = new StringBuilder();
+                for (VariableElement parameter : constructor.getParameters()) {
+                    if (provided.length() > 0) {
+                        provided.append(", ");
+                    }
+                    TypeMirror providedType = providedTypeOf(parameter.asType());
+                    provided.append((providedType == null) ? "null" : erasure(providedType) + ".class");
+                }
+                out.println("            {" + provided + "},");
+            }
+            out.println("    };");
+            out.println();
+            out.println("    public boolean[] lazy(int constructor) {");
+            out.println("        return LAZY[constructor];");
+            out.println("    }");
+            out.println();
+            out.println("    public Class<?>[] providedTypes(int constructor) {");
+            out.println("        return PROVIDED_TYPES[constructor];");
+            out.println("    }");
+            out.println();
+            out.println("    public Object newInstance(int constructor, Object[] args) throws Exception {");
+            out.println("        switch (constructor) {");
+            for (int i = 0; i < constructors.size(); i++) {
+                StringBuilder args = new StringBuilder();
+                List<? extends VariableElement> parameters = constructors.get(i).getParameters();
+                for (int j = 0; j < parameters.size(); j++) {
+                    if (j > 0) {
+                        args.append(", ");
+                    }
+                    args.append("(").append(castType(parameters.get(j).asType())).append(") args[").append(j).append("]");
+                }
+                out.println("            case " + i + ":");
+                out.println("                return new " + componentName + "(" + args + ");");
+            }
+            out.println("            default:");
+            out.println("                throw new IndexOutOfBoundsException(\"No constructor \" + constructor);");
+            out.println("        }");
+            out.println("    }");
+            out.println("}");
+            out.close();
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not generate the injector: " + e.getMessage(), component);
+        }
+    }
+
+    private String erasure(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    // The T of a Provider<T> parameter, when it names a class or interface
+    private TypeMirror providedTypeOf(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        DeclaredType declared = (DeclaredType) type;
+        if (!((TypeElement) declared.asElement()).getQualifiedName().contentEquals(PROVIDER) || declared.getTypeArguments().size() != 1) {
+            return null;
+        }
+        TypeMirror argument = declared.getTypeArguments().get(0);
+        return (argument.getKind() == TypeKind.DECLARED) ? argument : null;
+    }
+
+    private String castType(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return processingEnv.getTypeUtils().boxedClass((PrimitiveType) type).getQualifiedName().toString();
+        }
+        return erasure(type);
+    }
+
+    private static String qualifierOf(VariableElement parameter) {
+        AnnotationMirror annotation = annotationOf(parameter, NAMED);
+        if (annotation != null) {
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation.getElementValues().entrySet()) {
+                if (entry.getKey().getSimpleName().contentEquals("value")) {
+                    return (String) entry.getValue().getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static AnnotationMirror annotationOf(VariableElement parameter, String annotationName) {
+        for (AnnotationMirror annotation : parameter.getAnnotationMirrors()) {
+            if (((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationName)) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+}
@@ -1,5 +1,7 @@
 package midcontainers.mq;
 
+import midcontainers.executors.ConnectionExecutors;
+
 import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -13,7 +15,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.List;
-import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * A networked message broker.
@@ -32,7 +36,8 @@ public class MessageBroker {
    private Thread acceptingThread;
    private File fMessages; 
    private Map<String,MessageQueue> mapQueue = new HashMap<String,MessageQueue>();
-   private List<MessageWorker> msgWorkers = new ArrayList<MessageWorker>();
+   private List<MessageWorker> msgWorkers = new CopyOnWriteArrayList<MessageWorker>();
+   private final Executor connections;
     /**
      * Creates and prepares a message broker.
      *
@@ -42,6 +47,23 @@ public class MessageBroker {
      *                     of durable queues failed
      */
     public MessageBroker(int port, File storageDirectory) {
+        this(port, storageDirectory, ConnectionExecutors.threadPerConnection());
+    }
+
+    /**
+     * Creates and prepares a message broker serving each client connection on a thread
+     * given by an executor, such as <code>ConnectionExecutors.virtualThreadPerConnection()</code>.
+     *
+     * @param port             the port number for incoming client connections
+     * @param storageDirectory the storage directory for reliable queues
+     * @param connections      the executor running each client connection, which must give
+     *                         every connection its own thread
+     * @throws MqException if the broker could not be started, or if the reloading
+     *                     of durable queues failed
+     * @see midcontainers.executors.ConnectionExecutors
+     */
+    public MessageBroker(int port, File storageDirectory, Executor connections) {
+        this.connections = connections;
         try {
             this.serverSocket = new ServerSocket();
             this.fMessages = storageDirectory;
@@ -57,7 +79,13 @@ public class MessageBroker {
                         Socket clientSocket = serverSocket.accept();
                         MessageWorker w = new MessageWorker(clientSocket,reference);
                         msgWorkers.add(w);
-                        w.start();
+                        try {
+                            // The worker loop runs on the executor thread, the worker thread is never started
+                            connections.execute(w);
+                        } catch (RejectedExecutionException e) {
+                            msgWorkers.remove(w);
+                            clientSocket.close();
+                        }
                     }catch(SocketTimeoutException nope){
                     }catch(IOException e){ throw new MqException(e);}
                 }
@@ -17,9 +17,12 @@
 
 package midcontainers.mq;
 
+import midcontainers.executors.ConnectionExecutors;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
@@ -85,4 +88,25 @@ public class MessageBrokingTest {
         broker.stop();
     }
 
+    @Test
+    public void connection_executor_test() throws InterruptedException, IOException {
+        final AtomicInteger connections = new AtomicInteger();
+        final Executor threads = ConnectionExecutors.threadPerConnection();
+        MessageBroker broker = new MessageBroker(2014, MessageQueueTest.createTempDirectory(), new Executor() {
+            public void execute(Runnable command) {
+                connections.incrementAndGet();
+                threads.execute(command);
+            }
+        });
+        broker.start();
+
+        Thread.sleep(250);
+        MessageBrokerClient client = new MessageBrokerClient("127.0.0.1", 2014);
+        client.send(new Message("queue", "Hello world!"));
+        assertThat((String) client.receiveFrom("queue").getPayload(), is("Hello world!"));
+        assertThat(connections.get(), is(1));
+
+        client.close();
+        broker.stop();
+    }
 }